@@ -18,16 +18,26 @@ package io.syndesis.connector.catalog;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.syndesis.core.SyndesisServerException;
 import org.apache.camel.catalog.CamelCatalog;
 import org.apache.camel.catalog.CollectionStringBuffer;
 import org.apache.camel.catalog.DefaultCamelCatalog;
@@ -38,25 +48,56 @@ import org.apache.camel.catalog.maven.MavenArtifactProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Holds the Camel connectors and components known to Syndesis.  The connectors
+ * built with Syndesis are read from the bundled {@code camel-meta.json}, the others
+ * are downloaded from the Maven repositories.  When a cache directory is set, the
+ * descriptors of the downloaded connectors are saved there, in the format of the
+ * {@code camel-meta.json} entries, and read back instead of downloading them again.
+ *
+ * The catalog can be used from many threads.  Connectors are downloaded outside of
+ * the lock guarding the Camel catalogs, so that building endpoint uris doesn't wait
+ * for downloads.
+ */
 public class ConnectorCatalog {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConnectorCatalog.class);
     private static final String CONNECTOR_SCHEMAS = "/META-INF/camel/camel-meta.json";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Bumped when the format of the cached descriptors changes
+    private static final String CACHE_VERSION = "v1";
+    private static final int MAX_ENDPOINT_URIS = 10_000;
 
     private final CamelConnectorCatalog connectorCatalog;
     private final CamelCatalog camelCatalog;
     private final MavenArtifactProvider maven;
+    private final Path cacheDirectory;
 
-    private final Set<String> prefetchedConnectors = new HashSet<>();
+    // Guards the Camel catalogs, which are not thread safe and cache on reads
+    private final Object lock = new Object();
+
+    private final Set<String> prefetchedConnectors = ConcurrentHashMap.newKeySet();
+    // Connectors added or being added, by GAV
+    private final Map<String, CompletableFuture<Void>> additions = new ConcurrentHashMap<>();
+    // Endpoint uris built so far, dropped when components are added
+    private final Map<EndpointKey, String> endpointUris = new ConcurrentHashMap<>();
 
     public ConnectorCatalog(ConnectorCatalogProperties props) {
+        this(props, new DefaultMavenArtifactProvider());
+    }
+
+    /* default */ ConnectorCatalog(ConnectorCatalogProperties props, MavenArtifactProvider maven) {
 
         connectorCatalog = new DefaultCamelConnectorCatalog();
         camelCatalog = new DefaultCamelCatalog(true);
 
+        String directory = props.getCacheDirectory();
+        cacheDirectory = directory == null || directory.isEmpty() ? null : Paths.get(directory, CACHE_VERSION);
+
         prefetchConnectors();
 
-        maven = new DefaultMavenArtifactProvider();
+        this.maven = maven;
 
         for (Map.Entry<String, String> repo : props.getMavenRepos().entrySet()) {
             maven.addMavenRepository(repo.getKey(), repo.getValue());
@@ -70,7 +111,7 @@ public class ConnectorCatalog {
     private void prefetchConnectors() {
         try (InputStream is = getClass().getResourceAsStream(CONNECTOR_SCHEMAS)) {
             if (is != null) {
-                ArrayNode descriptors = (ArrayNode) new ObjectMapper().readTree(is);
+                ArrayNode descriptors = (ArrayNode) MAPPER.readTree(is);
                 for (JsonNode descriptor : descriptors) {
                     JsonNode gav = descriptor.get("gav");
                     if (gav == null) {
@@ -82,14 +123,8 @@ public class ConnectorCatalog {
                     }
                     LOG.info("Prefetched meta for {}:{}:{}", gavCoords[0], gavCoords[1], gavCoords[2]);
                     prefetchedConnectors.add(gav.textValue());
-
-                    JsonNode connector = descriptor.get("connector");
-                    ObjectNode component = (ObjectNode) descriptor.get("component");
-                    if (connector != null) {
-                        addConnector(gavCoords, connector, component);
-                    }
-                    if (component != null) {
-                        addComponent(component);
+                    synchronized (lock) {
+                        addDescriptor(gavCoords, descriptor);
                     }
                 }
             }
@@ -98,8 +133,24 @@ public class ConnectorCatalog {
         }
     }
 
+    // Must hold the lock
+    private void addDescriptor(String[] gavCoords, JsonNode descriptor) {
+        endpointUris.clear();
+        JsonNode connector = descriptor.get("connector");
+        ObjectNode component = (ObjectNode) descriptor.get("component");
+        if (connector != null) {
+            addConnector(gavCoords, connector, component);
+        }
+        if (component != null) {
+            addComponent(component);
+        }
+    }
+
     private void addComponent(ObjectNode component) {
         ObjectNode meta = (ObjectNode) component.get("meta");
+        if (meta == null) {
+            return;
+        }
         Iterator<Map.Entry<String, JsonNode>> it = meta.fields();
         while (it.hasNext()) {
             Map.Entry<String, JsonNode> entry = it.next();
@@ -127,7 +178,7 @@ public class ConnectorCatalog {
 
     private String extractJavaType(String json) {
         try {
-            ObjectNode node = (ObjectNode) new ObjectMapper().readTree(json);
+            ObjectNode node = (ObjectNode) MAPPER.readTree(json);
             JsonNode c = node.get("component");
             if (c != null) {
                 JsonNode ret = c.get("javaType");
@@ -163,7 +214,7 @@ public class ConnectorCatalog {
 
     private String getJsonAsString(JsonNode jsonNode) {
         try {
-            return new ObjectMapper().writeValueAsString(jsonNode);
+            return MAPPER.writeValueAsString(jsonNode);
         } catch (JsonProcessingException e) {
             return null;
         }
@@ -180,33 +231,211 @@ public class ConnectorCatalog {
         return csb.toString();
     }
 
+    /**
+     * Adds a connector, and the components it needs, to the catalog.  Concurrent
+     * calls for the same connector share a single download.
+     *
+     * @param gav the Maven coordinates of the connector
+     */
     public final void addConnector(String gav) {
         if (prefetchedConnectors.contains(gav)) {
             return;
         }
 
+        final CompletableFuture<Void> addition = new CompletableFuture<>();
+        final CompletableFuture<Void> existing = additions.putIfAbsent(gav, addition);
+        if (existing != null) {
+            try {
+                existing.join();
+            } catch (CompletionException e) {
+                throw SyndesisServerException.launderThrowable(e.getCause());
+            }
+            return;
+        }
+
+        try {
+            doAddConnector(gav);
+            addition.complete(null);
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+            // Let the next caller try again
+            additions.remove(gav, addition);
+            addition.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void doAddConnector(String gav) {
         String[] splitGAV = gav.split(":");
         if (splitGAV.length == 3) {
             String groupId = splitGAV[0];
             String artifactId = splitGAV[1];
             String version = splitGAV[2];
 
+            if (addCachedConnector(splitGAV)) {
+                return;
+            }
+
             LOG.info("Downloading Maven GAV: {}:{}:{}", groupId, artifactId, version);
 
-            maven.addArtifactToCatalog(camelCatalog, connectorCatalog, groupId, artifactId, version);
+            // Downloaded into catalogs of its own so the shared ones stay usable meanwhile
+            CamelCatalog downloadCamelCatalog = new DefaultCamelCatalog();
+            CamelConnectorCatalog downloadConnectorCatalog = new DefaultCamelConnectorCatalog();
+            Set<String> knownComponents = new HashSet<>(downloadCamelCatalog.findComponentNames());
+            maven.addArtifactToCatalog(downloadCamelCatalog, downloadConnectorCatalog, groupId, artifactId, version);
+
+            ObjectNode descriptor = describe(splitGAV, downloadCamelCatalog, downloadConnectorCatalog, knownComponents);
+            synchronized (lock) {
+                addDescriptor(splitGAV, descriptor);
+            }
+            if (descriptor.has("connector")) {
+                cacheDescriptor(splitGAV, descriptor);
+            }
+        }
+    }
+
+    /* default */ boolean hasConnector(String gav) {
+        String[] splitGAV = gav.split(":");
+        synchronized (lock) {
+            return splitGAV.length == 3 && connectorCatalog.hasConnector(splitGAV[0], splitGAV[1], splitGAV[2]);
+        }
+    }
+
+    private Path cachePath(String[] gavCoords) {
+        return cacheDirectory.resolve(gavCoords[0]).resolve(gavCoords[1]).resolve(gavCoords[2] + ".json");
+    }
+
+    private boolean addCachedConnector(String[] gavCoords) {
+        if (cacheDirectory == null) {
+            return false;
+        }
+        Path path = cachePath(gavCoords);
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+
+        try {
+            JsonNode descriptor = MAPPER.readTree(Files.readAllBytes(path));
+            synchronized (lock) {
+                addDescriptor(gavCoords, descriptor);
+            }
+            LOG.info("Cached meta for {}:{}:{}", gavCoords[0], gavCoords[1], gavCoords[2]);
+            return true;
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") IOException | RuntimeException e) {
+            LOG.warn("Ignoring the unreadable cached meta {}", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Describes a downloaded connector, and the components it brought along, in the
+     * format of the {@code camel-meta.json} entries.
+     */
+    private static ObjectNode describe(String[] gavCoords, CamelCatalog camelCatalog, CamelConnectorCatalog connectorCatalog, Set<String> knownComponents) {
+        String groupId = gavCoords[0];
+        String artifactId = gavCoords[1];
+        String version = gavCoords[2];
+
+        ObjectNode descriptor = MAPPER.createObjectNode();
+        descriptor.put("gav", groupId + ":" + artifactId + ":" + version);
+
+        ObjectNode component = descriptor.putObject("component");
+        ObjectNode componentMeta = component.putObject("meta");
+        for (String name : camelCatalog.findComponentNames()) {
+            if (!knownComponents.contains(name)) {
+                componentMeta.put(name, camelCatalog.componentJSonSchema(name));
+            }
+        }
+
+        if (connectorCatalog.hasConnector(groupId, artifactId, version)) {
+            ObjectNode connector = descriptor.putObject("connector");
+            try {
+                connector.set("meta", MAPPER.readTree(connectorCatalog.connectorJSon(groupId, artifactId, version)));
+            } catch (IOException e) {
+                throw SyndesisServerException.launderThrowable(e);
+            }
+            putIfNotNull(connector, "schema", connectorCatalog.connectorSchemaJSon(groupId, artifactId, version));
+            putIfNotNull(component, "schema", connectorCatalog.componentSchemaJSon(groupId, artifactId, version));
+        }
+        return descriptor;
+    }
+
+    private void cacheDescriptor(String[] gavCoords, ObjectNode descriptor) {
+        // Snapshots change without their version changing
+        if (cacheDirectory == null || gavCoords[2].endsWith("-SNAPSHOT")) {
+            return;
+        }
+
+        try {
+            // Written aside and moved in place so readers never see a partial file
+            Path path = cachePath(gavCoords);
+            Files.createDirectories(path.getParent());
+            Path tmp = Files.createTempFile(path.getParent(), gavCoords[1], ".tmp");
+            MAPPER.writeValue(tmp.toFile(), descriptor);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot cache the meta of {}:{}:{}", gavCoords[0], gavCoords[1], gavCoords[2], e);
+        }
+    }
+
+    private static void putIfNotNull(ObjectNode node, String key, String value) {
+        if (value != null) {
+            node.put(key, value);
         }
     }
 
+    /**
+     * Builds the uri of an endpoint from its options.  The uris are remembered, as
+     * the same endpoints are built over and over by the project generations.
+     */
     public String buildEndpointUri(String scheme, Map<String, String> options) throws URISyntaxException {
-        String result = camelCatalog.asEndpointUri(scheme, options, false);
-        // we need to strip off the colon bit.
-        if (result.equals(scheme + ":")) {
-            result = scheme;
+        final EndpointKey key = new EndpointKey(scheme, options);
+        String result = endpointUris.get(key);
+        if (result != null) {
+            return result;
         }
-        if (result.startsWith(scheme + ":?")) {
-            result = scheme + result.substring(scheme.length() + 1);
+
+        synchronized (lock) {
+            result = camelCatalog.asEndpointUri(scheme, options, false);
+            // we need to strip off the colon bit.
+            if (result.equals(scheme + ":")) {
+                result = scheme;
+            }
+            if (result.startsWith(scheme + ":?")) {
+                result = scheme + result.substring(scheme.length() + 1);
+            }
+
+            // Under the lock so that an uri built before components are added isn't kept
+            if (endpointUris.size() < MAX_ENDPOINT_URIS) {
+                endpointUris.put(key, result);
+            }
         }
         return result;
     }
 
+    private static final class EndpointKey {
+        private final String scheme;
+        private final Map<String, String> options;
+
+        EndpointKey(String scheme, Map<String, String> options) {
+            this.scheme = scheme;
+            this.options = options == null ? Collections.emptyMap() : new HashMap<>(options);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EndpointKey)) {
+                return false;
+            }
+            EndpointKey other = (EndpointKey) obj;
+            return scheme.equals(other.scheme) && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scheme.hashCode() + options.hashCode();
+        }
+    }
 }
@@ -28,6 +28,12 @@ public class ConnectorCatalogProperties {
 
     private List<String> connectorGAVs = new ArrayList<>(5);
 
+    /**
+     * Directory where the meta of the downloaded connectors is cached, no caching if
+     * not set.  Should be on a volume outliving the pod to avoid downloads on restarts.
+     */
+    private String cacheDirectory;
+
     private final MavenProperties mavenProperties;
 
     public ConnectorCatalogProperties(final MavenProperties mavenProperties) {
@@ -46,4 +52,12 @@ public class ConnectorCatalogProperties {
         this.connectorGAVs = connectorGAVs;
     }
 
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(final String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
 }
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.connector.catalog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.syndesis.core.MavenProperties;
+import org.apache.camel.catalog.CamelCatalog;
+import org.apache.camel.catalog.connector.CamelConnectorCatalog;
+import org.apache.camel.catalog.maven.MavenArtifactProvider;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectorCatalogTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectorCatalogTest.class);
+    private static final String DOWNLOADED_GAV = "io.syndesis.test:downloaded-connector:1.0";
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldAddConnectorFromCache() throws IOException {
+        final Path cache = testFolder.newFolder("cache").toPath();
+        writeCachedConnector(cache, "cached-connector");
+
+        final ConnectorCatalogProperties properties = new ConnectorCatalogProperties(new MavenProperties());
+        properties.setCacheDirectory(cache.toString());
+        properties.getConnectorGAVs().add("io.syndesis.test:cached-connector:1.0");
+
+        // The artifact is in no repository, so it can only come from the cache
+        final ConnectorCatalog catalog = new ConnectorCatalog(properties);
+        assertThat(catalog.hasConnector("io.syndesis.test:cached-connector:1.0")).isTrue();
+    }
+
+    /**
+     * Measures the startup of a catalog whose connectors are all cached, to compare
+     * with the time it takes to download them.  Only runs with {@code -Dsyndesis.benchmarks=true}.
+     */
+    @Test
+    public void benchmarkStartupFromCache() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean("syndesis.benchmarks"));
+
+        final int connectors = 100;
+        final Path cache = testFolder.newFolder("cache").toPath();
+        final ConnectorCatalogProperties properties = new ConnectorCatalogProperties(new MavenProperties());
+        properties.setCacheDirectory(cache.toString());
+        for (int i = 0; i < connectors; i++) {
+            writeCachedConnector(cache, "cached-connector-" + i);
+            properties.getConnectorGAVs().add("io.syndesis.test:cached-connector-" + i + ":1.0");
+        }
+
+        final long start = System.nanoTime();
+        final ConnectorCatalog catalog = new ConnectorCatalog(properties);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (String gav : properties.getConnectorGAVs()) {
+            assertThat(catalog.hasConnector(gav)).isTrue();
+        }
+        LOG.info("Started a catalog with {} cached connectors in {} ms", connectors, elapsedMillis);
+    }
+
+    @Test
+    public void shouldBuildEndpointUrisConcurrently() throws Exception {
+        final ConnectorCatalog catalog = new ConnectorCatalog(new ConnectorCatalogProperties(new MavenProperties()));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> uris = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final String name = "timer-" + i % 10;
+                uris.add(executor.submit(() -> {
+                    final Map<String, String> options = new HashMap<>();
+                    options.put("timerName", name);
+                    options.put("period", "1000");
+                    return catalog.buildEndpointUri("timer", options);
+                }));
+            }
+            for (int i = 0; i < uris.size(); i++) {
+                assertThat(uris.get(i).get()).isEqualTo("timer:timer-" + i % 10 + "?period=1000");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldDownloadConnectorOnceForConcurrentAdditions() throws Exception {
+        final CountDownLatch downloading = new CountDownLatch(1);
+        final CountDownLatch downloaded = new CountDownLatch(1);
+        final MavenArtifactProvider maven = mock(MavenArtifactProvider.class);
+        when(maven.addArtifactToCatalog(any(CamelCatalog.class), any(CamelConnectorCatalog.class), anyString(), anyString(), anyString()))
+            .thenAnswer(invocation -> {
+                downloading.countDown();
+                downloaded.await(10, TimeUnit.SECONDS);
+                return Collections.emptySet();
+            });
+
+        final ConnectorCatalog catalog = new ConnectorCatalog(new ConnectorCatalogProperties(new MavenProperties()), maven);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> additions = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                additions.add(executor.submit(() -> catalog.addConnector(DOWNLOADED_GAV)));
+            }
+
+            // Additions coming while or after the download is made share it
+            assertThat(downloading.await(10, TimeUnit.SECONDS)).isTrue();
+            downloaded.countDown();
+            for (Future<?> addition : additions) {
+                addition.get(10, TimeUnit.SECONDS);
+            }
+            catalog.addConnector(DOWNLOADED_GAV);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(maven, times(1)).addArtifactToCatalog(any(CamelCatalog.class), any(CamelConnectorCatalog.class), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldDownloadConnectorAgainAfterFailure() {
+        final MavenArtifactProvider maven = mock(MavenArtifactProvider.class);
+        when(maven.addArtifactToCatalog(any(CamelCatalog.class), any(CamelConnectorCatalog.class), anyString(), anyString(), anyString()))
+            .thenThrow(new IllegalStateException("Repository unavailable"))
+            .thenReturn(Collections.emptySet());
+
+        final ConnectorCatalog catalog = new ConnectorCatalog(new ConnectorCatalogProperties(new MavenProperties()), maven);
+
+        assertThatThrownBy(() -> catalog.addConnector(DOWNLOADED_GAV))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Repository unavailable");
+        catalog.addConnector(DOWNLOADED_GAV);
+
+        verify(maven, times(2)).addArtifactToCatalog(any(CamelCatalog.class), any(CamelConnectorCatalog.class), anyString(), anyString(), anyString());
+    }
+
+    private static void writeCachedConnector(Path cache, String artifactId) throws IOException {
+        final Path path = cache.resolve("v1").resolve("io.syndesis.test").resolve(artifactId).resolve("1.0.json");
+        Files.createDirectories(path.getParent());
+
+        final String descriptor = "{"
+            + "\"gav\":\"io.syndesis.test:" + artifactId + ":1.0\","
+            + "\"connector\":{\"meta\":{"
+            + "\"name\":\"" + artifactId + "\","
+            + "\"scheme\":\"" + artifactId + "\","
+            + "\"javaType\":\"io.syndesis.test.CachedComponent\","
+            + "\"description\":\"A cached connector\","
+            + "\"labels\":[\"test\"]"
+            + "}}}";
+        Files.write(path, descriptor.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -16,6 +16,9 @@
 
 package io.syndesis.controllers;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties("controllers")
@@ -27,6 +30,14 @@ public class ControllersConfigurationProperties {
 
     private int maxIntegrationsPerUser = 1;
     private int maxDeploymentsPerUser = 1;
+    private int integrationWorkerThreads = 4;
+    private int integrationMaxQueuedTasks = 10_000;
+    private long integrationResyncIntervalSeconds = 600;
+
+    // Generic runtime image holding the connectors below, integrations using only
+    // these connectors are deployed on it without a build
+    private String prebuiltRuntimeImage;
+    private final Set<String> prebuiltRuntimeConnectors = new HashSet<>();
 
     public int getMaxIntegrationsPerUser() {
         return maxIntegrationsPerUser;
@@ -44,4 +55,43 @@ public class ControllersConfigurationProperties {
         this.maxDeploymentsPerUser = maxDeploymentsPerUser;
     }
 
+    public int getIntegrationWorkerThreads() {
+        return integrationWorkerThreads;
+    }
+
+    public void setIntegrationWorkerThreads(int integrationWorkerThreads) {
+        this.integrationWorkerThreads = integrationWorkerThreads;
+    }
+
+    public int getIntegrationMaxQueuedTasks() {
+        return integrationMaxQueuedTasks;
+    }
+
+    public void setIntegrationMaxQueuedTasks(int integrationMaxQueuedTasks) {
+        this.integrationMaxQueuedTasks = integrationMaxQueuedTasks;
+    }
+
+    public long getIntegrationResyncIntervalSeconds() {
+        return integrationResyncIntervalSeconds;
+    }
+
+    public void setIntegrationResyncIntervalSeconds(long integrationResyncIntervalSeconds) {
+        this.integrationResyncIntervalSeconds = integrationResyncIntervalSeconds;
+    }
+
+    public String getPrebuiltRuntimeImage() {
+        return prebuiltRuntimeImage;
+    }
+
+    public void setPrebuiltRuntimeImage(String prebuiltRuntimeImage) {
+        this.prebuiltRuntimeImage = prebuiltRuntimeImage;
+    }
+
+    /**
+     * @return the GAVs of the connectors in the prebuilt runtime image
+     */
+    public Set<String> getPrebuiltRuntimeConnectors() {
+        return prebuiltRuntimeConnectors;
+    }
+
 }
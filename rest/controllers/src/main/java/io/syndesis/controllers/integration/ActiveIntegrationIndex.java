@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.syndesis.core.EventBus;
+import io.syndesis.core.Json;
+import io.syndesis.core.SyndesisServerException;
+import io.syndesis.dao.manager.DataManager;
+import io.syndesis.model.ChangeEvent;
+import io.syndesis.model.Kind;
+import io.syndesis.model.integration.Integration;
+import io.syndesis.model.integration.IntegrationRevisionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the ids of the active integrations of every user, so that quota checks
+ * don't have to load all the integrations.  The index is loaded once and then
+ * kept current from the integration change events.
+ */
+@Component
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class ActiveIntegrationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ActiveIntegrationIndex.class);
+
+    private static final String SUBSCRIBER_ID = "active-integration-index";
+
+    private final DataManager dataManager;
+    private final EventBus eventBus;
+
+    // Owner of every active integration, by integration id
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+    // Active integration ids, by owner
+    private final Map<String, Set<String>> activeByUser = new ConcurrentHashMap<>();
+
+    /* default */ ExecutorService executor;
+
+    public ActiveIntegrationIndex(DataManager dataManager, EventBus eventBus) {
+        this.dataManager = dataManager;
+        this.eventBus = eventBus;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, SUBSCRIBER_ID);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Subscribe before loading so that no change gets lost, the changes received
+        // before the load are applied first and then overwritten with what is loaded
+        eventBus.subscribe(SUBSCRIBER_ID, this::onEvent);
+        try {
+            executor.submit(this::load).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SyndesisServerException.launderThrowable(e);
+        } catch (ExecutionException e) {
+            throw SyndesisServerException.launderThrowable(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        eventBus.unsubscribe(SUBSCRIBER_ID);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Counts the active integrations of a user.
+     * @param username      The owner of the integrations.
+     * @param excludedId    The id of an integration not to count, may be null.
+     * @return              The number of active integrations of the user.
+     */
+    public int countActiveIntegrations(String username, String excludedId) {
+        Set<String> ids = activeByUser.getOrDefault(username, Collections.emptySet());
+        int count = ids.size();
+        if (excludedId != null && ids.contains(excludedId)) {
+            count--;
+        }
+        return count;
+    }
+
+    private void onEvent(String event, String data) {
+        // Never do anything that could block in this callback!
+        if (!"change-event".equals(event)) {
+            return;
+        }
+        try {
+            ChangeEvent changeEvent = Json.mapper().readValue(data, ChangeEvent.class);
+            if (changeEvent != null && changeEvent.getKind().map(Kind::from).filter(k -> k == Kind.Integration).isPresent()) {
+                changeEvent.getId().ifPresent(id -> executor.execute(() -> refresh(id)));
+            }
+        } catch (IOException e) {
+            LOG.error("Error while reading change-event {}", data, e);
+        }
+    }
+
+    private void load() {
+        try (Stream<Integration> integrations = dataManager.streamAll(Integration.class)) {
+            integrations.forEach(integration -> integration.getId().ifPresent(id -> update(id, integration)));
+        }
+        LOG.info("Indexed {} active integrations of {} users", owners.size(), activeByUser.size());
+    }
+
+    private void refresh(String id) {
+        update(id, dataManager.fetch(Integration.class, id));
+    }
+
+    private void update(String id, Integration integration) {
+        String owner = null;
+        if (integration != null && IntegrationRevisionState.Active.equals(integration.getStatus())) {
+            owner = integration.getUserId().orElse(null);
+        }
+
+        String previous = owner == null ? owners.remove(id) : owners.put(id, owner);
+        if (previous != null && !previous.equals(owner)) {
+            Set<String> ids = activeByUser.get(previous);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+        if (owner != null) {
+            activeByUser.computeIfAbsent(owner, u -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+}
@@ -18,19 +18,25 @@ package io.syndesis.controllers.integration;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import io.syndesis.controllers.ControllersConfigurationProperties;
 import io.syndesis.core.EventBus;
 import io.syndesis.core.Json;
+import io.syndesis.core.Names;
 import io.syndesis.dao.manager.DataManager;
 import io.syndesis.model.ChangeEvent;
 import io.syndesis.model.Kind;
@@ -38,32 +44,54 @@ import io.syndesis.model.integration.Integration;
 
 import io.syndesis.model.integration.IntegrationRevision;
 import io.syndesis.model.integration.IntegrationRevisionState;
+import io.syndesis.openshift.OpenShiftService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 /**
  * This class tracks changes to Integrations and attempts to process them so that
  * their current status matches their desired status.
+ *
+ * The work for an integration is serialized, while the work for different
+ * integrations runs in parallel on a bounded number of threads.  The statistics
+ * of that work are exposed through JMX.
+ *
+ * Integrations waiting on OpenShift are checked again when OpenShift reports a
+ * status change of their deployment or build.  They are also polled, every minute
+ * when OpenShift can't push status changes or at the slower resync interval when
+ * it can.
  */
 @Service
+@ManagedResource(objectName = "io.syndesis:type=IntegrationController", description = "Work queued and run for the integrations")
 public class IntegrationController {
     private static final Logger LOG = LoggerFactory.getLogger(IntegrationController.class);
 
     private final DataManager dataManager;
     private final EventBus eventBus;
+    private final OpenShiftService openShiftService;
+    private final ControllersConfigurationProperties properties;
     private final ConcurrentHashMap<Integration.Status, StatusChangeHandlerProvider.StatusChangeHandler> handlers = new ConcurrentHashMap<>();
-    private final Set<String> scheduledChecks = new HashSet<>();
-    /* default */ ExecutorService executor;
+    private final Set<String> scheduledChecks = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScheduledFuture<?>> rescheduledChecks = new ConcurrentHashMap<>();
+    private final Map<String, String> integrationIdsByDeployment = new ConcurrentHashMap<>();
+    private final Consumer<String> deploymentStatusListener = this::onDeploymentStatusChange;
+    private volatile long rescheduleIntervalInSeconds = SCHEDULE_INTERVAL_IN_SECONDS;
+    /* default */ KeyedExecutor executor;
     /* default */ ScheduledExecutorService scheduler;
 
     private static final long SCHEDULE_INTERVAL_IN_SECONDS = 60;
 
     @Autowired
-    public IntegrationController(DataManager dataManager, EventBus eventBus, StatusChangeHandlerProvider handlerFactory) {
+    public IntegrationController(DataManager dataManager, EventBus eventBus, StatusChangeHandlerProvider handlerFactory,
+                                 OpenShiftService openShiftService, ControllersConfigurationProperties properties) {
         this.dataManager = dataManager;
         this.eventBus = eventBus;
+        this.openShiftService = openShiftService;
+        this.properties = properties;
         for (StatusChangeHandlerProvider.StatusChangeHandler handler : handlerFactory.getStatusChangeHandlers()) {
             for (Integration.Status status : handler.getTriggerStatuses()) {
                 this.handlers.put(status, handler);
@@ -73,8 +101,11 @@ public class IntegrationController {
 
     @PostConstruct
     public void start() {
-        executor = Executors.newSingleThreadExecutor();
+        executor = new KeyedExecutor("integration-controller", properties.getIntegrationWorkerThreads(), properties.getIntegrationMaxQueuedTasks());
         scheduler = Executors.newScheduledThreadPool(1);
+        if (openShiftService.addStatusListener(deploymentStatusListener)) {
+            rescheduleIntervalInSeconds = properties.getIntegrationResyncIntervalSeconds();
+        }
         scanIntegrationsForWork();
 
         eventBus.subscribe("integration-controller", getChangeEventSubscription());
@@ -103,8 +134,58 @@ public class IntegrationController {
         };
     }
 
+    /**
+     * @return the executor running the work of the integrations, to monitor its queue
+     */
+    public KeyedExecutor getExecutor() {
+        return executor;
+    }
+
+    @ManagedAttribute(description = "Number of integration tasks waiting to run")
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    @ManagedAttribute(description = "Number of integration tasks running")
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "Number of integration tasks completed")
+    public long getCompletedCount() {
+        return executor.getCompletedCount();
+    }
+
+    @ManagedAttribute(description = "Number of integration tasks rejected because too many were waiting, their integration is checked again later")
+    public long getRejectedCount() {
+        return executor.getRejectedCount();
+    }
+
+    @ManagedAttribute(description = "Average time in milliseconds integration tasks waited to run")
+    public double getAverageWaitMillis() {
+        return executor.getAverageWaitMillis();
+    }
+
+    @ManagedAttribute(description = "Longest time in milliseconds an integration task waited to run")
+    public double getMaxWaitMillis() {
+        return executor.getMaxWaitMillis();
+    }
+
+    @ManagedAttribute(description = "Average time in milliseconds integration tasks took to run")
+    public double getAverageRunMillis() {
+        return executor.getAverageRunMillis();
+    }
+
+    private void onDeploymentStatusChange(String deploymentName) {
+        // Called on an OpenShift client thread, only queue the check
+        String id = integrationIdsByDeployment.get(deploymentName);
+        if (id != null) {
+            execute(id, () -> checkIntegrationStatus(dataManager.fetch(Integration.class, id)));
+        }
+    }
+
     private void checkIntegrationStatusIfNotAlreadyInProgress(String id) {
-        executor.execute(() -> {
+        execute(id, () -> {
             Integration integration = dataManager.fetch(Integration.class, id);
             if( integration!=null ) {
                 String scheduledKey = getIntegrationMarkerKey(integration);
@@ -119,16 +200,18 @@ public class IntegrationController {
     @PreDestroy
     public void stop() {
         eventBus.unsubscribe("integration-controller");
+        openShiftService.removeStatusListener(deploymentStatusListener);
         scheduler.shutdownNow();
         executor.shutdownNow();
     }
 
     private void scanIntegrationsForWork() {
-        executor.submit(() -> {
-            dataManager.fetchAll(Integration.class).getItems().forEach(integration -> {
-                LOG.info("Checking integrations for their status.");
-                checkIntegrationStatus(integration);
-            });
+        scheduler.execute(() -> {
+            LOG.info("Checking integrations for their status.");
+            try (Stream<Integration> integrations = dataManager.streamAll(Integration.class)) {
+                integrations.forEach(integration ->
+                    integration.getId().ifPresent(id -> execute(id, () -> checkIntegrationStatus(integration))));
+            }
         });
     }
 
@@ -136,6 +219,11 @@ public class IntegrationController {
         if (integration == null) {
             return;
         }
+        if (integration.getName() != null) {
+            integration.getId().ifPresent(id ->
+                integrationIdsByDeployment.put(Names.sanitize(integration.getName()), id));
+        }
+
         Optional<Integration.Status> desired = integration.getDesiredStatus();
         Optional<Integration.Status> current = integration.getCurrentStatus();
         if (!current.equals(desired)) {
@@ -160,7 +248,7 @@ public class IntegrationController {
     }
 
     /* default */ void callStatusChangeHandler(StatusChangeHandlerProvider.StatusChangeHandler handler, String integrationId) {
-        executor.submit(() -> {
+        execute(integrationId, () -> {
             Integration integration = dataManager.fetch(Integration.class, integrationId);
             String checkKey = getIntegrationMarkerKey(integration);
             scheduledChecks.add(checkKey);
@@ -233,11 +321,35 @@ public class IntegrationController {
         });
     }
 
+    /**
+     * Queues work for the integration.  When too much work is queued already, the
+     * integration is checked again later instead, as all the work comes down to
+     * bringing it to its desired status.
+     */
+    private void execute(String integrationId, Runnable task) {
+        try {
+            executor.execute(integrationId, task);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Integration {} : Too much work queued, checking it again in {} seconds", integrationId, SCHEDULE_INTERVAL_IN_SECONDS);
+            reschedule(integrationId, SCHEDULE_INTERVAL_IN_SECONDS);
+        }
+    }
+
     private void reschedule(String integrationId) {
-        scheduler.schedule(() -> {
+        reschedule(integrationId, rescheduleIntervalInSeconds);
+    }
+
+    private void reschedule(String integrationId, long delayInSeconds) {
+        ScheduledFuture<?> check = scheduler.schedule(() -> execute(integrationId, () -> {
             Integration i = dataManager.fetch(Integration.class, integrationId);
             checkIntegrationStatus(i);
-        }, SCHEDULE_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+        }), delayInSeconds, TimeUnit.SECONDS);
+
+        // Only keep the latest check, status change events can run the handler many times in between
+        ScheduledFuture<?> previous = check == null ? null : rescheduledChecks.put(integrationId, check);
+        if (previous != null) {
+            previous.cancel(false);
+        }
     }
 
     private String getIntegrationMarkerKey(Integration integration) {
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a bounded pool of threads.  Tasks submitted with the same key run
+ * one after the other in submission order, while tasks with different keys run in
+ * parallel.  At most a given number of tasks wait to run, further ones are
+ * rejected.  Keeps track of the queue depth and of the time tasks spend waiting
+ * and running.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class KeyedExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedExecutor.class);
+
+    public static final int DEFAULT_MAX_QUEUED = 10_000;
+
+    private final ThreadPoolExecutor pool;
+    private final int maxQueued;
+
+    // Tasks waiting for the running task of their key, guarded by itself
+    private final Map<String, Queue<Runnable>> pending = new HashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public KeyedExecutor(String name, int threads) {
+        this(name, threads, DEFAULT_MAX_QUEUED);
+    }
+
+    public KeyedExecutor(String name, int threads, int maxQueued) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // Only the first waiting task of a key is in the pool queue, which never
+        // holds more than the queued tasks
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(maxQueued), threadFactory);
+        this.pool.allowCoreThreadTimeOut(true);
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Runs the task once all the tasks previously submitted with the same key are done.
+     *
+     * @throws RejectedExecutionException if too many tasks are waiting to run already
+     */
+    public void execute(String key, Runnable task) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Too many tasks waiting to run, rejecting the one for " + key);
+        }
+
+        long submitted = System.nanoTime();
+        Runnable timed = () -> {
+            long start = System.nanoTime();
+            queued.decrementAndGet();
+            started.increment();
+            waitNanos.add(start - submitted);
+            maxWaitNanos.accumulateAndGet(start - submitted, Math::max);
+            try {
+                task.run();
+            } finally {
+                runNanos.add(System.nanoTime() - start);
+                completed.increment();
+            }
+        };
+
+        synchronized (pending) {
+            Queue<Runnable> queue = pending.get(key);
+            if (queue != null) {
+                // A task of that key is running, it starts this one when done
+                queue.add(timed);
+                return;
+            }
+            pending.put(key, new ArrayDeque<>());
+        }
+        submit(key, timed);
+    }
+
+    private void submit(String key, Runnable task) {
+        try {
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+                    LOG.error("Error while running a task for {}", key, e);
+                } finally {
+                    runNext(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Executor shut down, dropping the tasks for {}", key, e);
+            synchronized (pending) {
+                Queue<Runnable> queue = pending.remove(key);
+                queued.addAndGet(-1 - (queue == null ? 0 : queue.size()));
+            }
+        }
+    }
+
+    private void runNext(String key) {
+        Runnable next;
+        synchronized (pending) {
+            Queue<Runnable> queue = pending.get(key);
+            next = queue.poll();
+            if (next == null) {
+                pending.remove(key);
+                return;
+            }
+        }
+        submit(key, next);
+    }
+
+    public void shutdownNow() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return the number of tasks submitted but not started yet.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of tasks running.
+     */
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return the number of tasks rejected because too many were waiting to run.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the average time, in milliseconds, the tasks waited before starting.
+     */
+    public double getAverageWaitMillis() {
+        return average(waitNanos, started);
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return the average time, in milliseconds, the completed tasks took to run.
+     */
+    public double getAverageRunMillis() {
+        return average(runNanos, completed);
+    }
+
+    private static double average(LongAdder nanos, LongAdder counter) {
+        long count = counter.sum();
+        return count == 0 ? 0 : nanos.sum() / 1_000_000.0 / count;
+    }
+}
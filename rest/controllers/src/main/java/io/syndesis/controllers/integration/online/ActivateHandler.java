@@ -18,23 +18,29 @@ package io.syndesis.controllers.integration.online;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import io.syndesis.controllers.ControllersConfigurationProperties;
+import io.syndesis.controllers.integration.ActiveIntegrationIndex;
 import io.syndesis.dao.manager.EncryptionComponent;
 import io.syndesis.controllers.integration.IntegrationSupport;
 import io.syndesis.controllers.integration.StatusChangeHandlerProvider;
 import io.syndesis.core.Names;
 import io.syndesis.core.SyndesisServerException;
 import io.syndesis.dao.manager.DataManager;
+import io.syndesis.model.action.ConnectorAction;
 import io.syndesis.model.integration.Integration;
 import io.syndesis.model.integration.IntegrationRevision;
+import io.syndesis.model.integration.Step;
 import io.syndesis.openshift.DeploymentData;
 import io.syndesis.openshift.OpenShiftService;
 import io.syndesis.project.converter.ProjectGenerator;
@@ -45,6 +51,9 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
     private final ProjectGenerator projectGenerator;
     private final ControllersConfigurationProperties properties;
     private final EncryptionComponent encryptionComponent;
+    private final ActiveIntegrationIndex activeIntegrationIndex;
+    // Names of the integrations being activated, by user, guarded by itself
+    private final Map<String, Set<String>> activating = new HashMap<>();
 
     @SuppressWarnings("PMD.DefaultPackage")
     ActivateHandler(
@@ -52,7 +61,8 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
             OpenShiftService openShiftService,
             ProjectGenerator projectGenerator,
             ControllersConfigurationProperties properties,
-            EncryptionComponent encryptionComponent) {
+            EncryptionComponent encryptionComponent,
+            ActiveIntegrationIndex activeIntegrationIndex) {
 
         super(openShiftService);
 
@@ -60,6 +70,7 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
         this.projectGenerator = projectGenerator;
         this.properties = properties;
         this.encryptionComponent = encryptionComponent;
+        this.activeIntegrationIndex = activeIntegrationIndex;
     }
 
     @Override
@@ -80,22 +91,53 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
         }
 
         final int maxDeploymentsPerUser = properties.getMaxDeploymentsPerUser();
-        if (maxDeploymentsPerUser != ControllersConfigurationProperties.UNLIMITED) {
-            int userDeployments = countDeployments(integration);
-            if (userDeployments >= maxDeploymentsPerUser) {
+        if (maxDeploymentsPerUser == ControllersConfigurationProperties.UNLIMITED) {
+            return activate(integration);
+        }
+
+        final String username = integration.getUserId().orElseThrow(() -> new IllegalStateException("Couldn't find the user of the integration"));
+        final String name = Names.sanitize(integration.getName());
+        synchronized (activating) {
+            // Integrations of the user being activated on other workers count too, their
+            // deployments may not exist yet
+            Set<String> userDeployments = findDeployments(username);
+            userDeployments.addAll(activating.getOrDefault(username, Collections.emptySet()));
+            userDeployments.remove(name);
+            if (userDeployments.size() >= maxDeploymentsPerUser) {
                 //What we actually want to limit. So even though this should never happen, we still need to make sure.
-                return new StatusUpdate(Integration.Status.Deactivated, "User has currently " + userDeployments + " deployments, while the maximum allowed number is " + maxDeploymentsPerUser + ".");
+                return new StatusUpdate(Integration.Status.Deactivated, "User has currently " + userDeployments.size() + " deployments, while the maximum allowed number is " + maxDeploymentsPerUser + ".");
+            }
+            activating.computeIfAbsent(username, u -> new HashSet<>()).add(name);
+        }
+
+        try {
+            return activate(integration);
+        } finally {
+            synchronized (activating) {
+                Set<String> names = activating.get(username);
+                names.remove(name);
+                if (names.isEmpty()) {
+                    activating.remove(username);
+                }
             }
         }
+    }
 
+    private StatusUpdate activate(Integration integration) {
         logInfo(integration,"Build started: {}, isRunning: {}, Deployment ready: {}",
                 isBuildStarted(integration), isRunning(integration), isReady(integration));
         BuildStepPerformer stepPerformer = new BuildStepPerformer(integration);
         logInfo(integration, "Steps performed so far: " + stepPerformer.getStepsPerformed());
         try {
 
-            DeploymentData deploymentData = createDeploymentData(integration);
-            stepPerformer.perform("build", this::build, deploymentData);
+            DeploymentData deploymentData;
+            if (canUsePrebuiltRuntime(integration)) {
+                logInfo(integration, "Deploying on the prebuilt runtime {}", properties.getPrebuiltRuntimeImage());
+                deploymentData = createPrebuiltRuntimeDeploymentData(integration);
+            } else {
+                deploymentData = createDeploymentData(integration);
+                stepPerformer.perform("build", this::build, deploymentData);
+            }
             stepPerformer.perform("deploy", this::deploy, deploymentData);
         } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception e) {
             logError(integration,"[ERROR] Activation failure");
@@ -117,14 +159,65 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
 
     private DeploymentData createDeploymentData(Integration integration) {
         Properties applicationProperties = IntegrationSupport.buildApplicationProperties(integration, fetchConnectorsMap(dataManager), encryptionComponent);
+
+        return deploymentDataBuilder(integration)
+            .addSecretEntry("application.properties", propsToString(applicationProperties))
+            .build();
+    }
+
+    /**
+     * The prebuilt runtime gets the files it would have found in a built project
+     * from the secret, the generated application properties followed by the ones
+     * holding the connection settings.
+     */
+    private DeploymentData createPrebuiltRuntimeDeploymentData(Integration integration) throws IOException {
+        Properties applicationProperties = IntegrationSupport.buildApplicationProperties(integration, fetchConnectorsMap(dataManager), encryptionComponent);
+        DeploymentData.Builder builder = deploymentDataBuilder(integration)
+            .withImage(properties.getPrebuiltRuntimeImage());
+
+        Map<String, byte[]> files = new HashMap<>(projectGenerator.generateConfiguration(integration));
+        byte[] generatedProperties = files.remove("application.properties");
+        files.forEach((name, content) -> builder.addSecretEntry(name, new String(content, StandardCharsets.UTF_8)));
+
+        String generated = generatedProperties == null ? "" : new String(generatedProperties, StandardCharsets.UTF_8) + "\n";
+        return builder
+            .addSecretEntry("application.properties", generated + propsToString(applicationProperties))
+            .build();
+    }
+
+    private static DeploymentData.Builder deploymentDataBuilder(Integration integration) {
         IntegrationRevision revision = IntegrationRevision.createNewRevision(integration);
         String username = integration.getUserId().orElseThrow(() -> new IllegalStateException("Couldn't find the user of the integration"));
 
         return DeploymentData.builder()
             .addLabel(OpenShiftService.REVISION_ID_ANNOTATION, revision.getVersion().orElse(0).toString())
-            .addLabel(OpenShiftService.USERNAME_LABEL, Names.sanitize(username))
-            .addSecretEntry("application.properties", propsToString(applicationProperties))
-            .build();
+            .addLabel(OpenShiftService.USERNAME_LABEL, Names.sanitize(username));
+    }
+
+    /**
+     * An integration can skip the build when the prebuilt runtime holds all its
+     * connectors and it uses no extension.
+     */
+    private boolean canUsePrebuiltRuntime(Integration integration) {
+        String image = properties.getPrebuiltRuntimeImage();
+        if (image == null || image.isEmpty()) {
+            return false;
+        }
+
+        for (Step step : integration.getSteps()) {
+            if (step.getExtension().isPresent()) {
+                return false;
+            }
+            boolean prebuilt = step.getAction()
+                .filter(ConnectorAction.class::isInstance)
+                .map(ConnectorAction.class::cast)
+                .map(action -> properties.getPrebuiltRuntimeConnectors().contains(action.getDescriptor().getCamelConnectorGAV()))
+                .orElse(Boolean.TRUE);
+            if (!prebuilt) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -132,9 +225,11 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
     // Various steps to perform:
 
     private void build(Integration integration, DeploymentData data) throws IOException {
-        InputStream tarInputStream = createProjectFiles(integration);
-        logInfo(integration, "Created project files and starting build");
-        openShiftService().build(integration.getName(), data, tarInputStream);
+        // Closing the project files lets their writer go when the build fails
+        try (InputStream tarInputStream = createProjectFiles(integration)) {
+            logInfo(integration, "Created project files and starting build");
+            openShiftService().build(integration.getName(), data, tarInputStream);
+        }
     }
 
     private void deploy(Integration integration, DeploymentData data) throws IOException {
@@ -181,31 +276,22 @@ public class ActivateHandler extends BaseHandler implements StatusChangeHandlerP
         String id = integration.getId().orElse(null);
         String username = integration.getUserId().orElseThrow(() -> new IllegalStateException("Couldn't find the user of the integration"));
 
-        return (int) dataManager.fetchAll(Integration.class).getItems()
-            .stream()
-            .filter(i -> !i.idEquals(id)) //The "current" integration will already be in the database.
-            .filter(i -> i.getUserId().map(username::equals).orElse(Boolean.FALSE))
-            .filter(i -> Integration.Status.Activated.equals(i.getStatus()))
-            .count();
+        //The "current" integration will already be in the database.
+        return activeIntegrationIndex.countActiveIntegrations(username, id);
     }
 
     /**
-     * Count the deployments of the owner of the specified integration.
-     * @param integration   The specified integration.
-     * @return              The number of deployed integrations (excluding the current).
+     * @return the names of the scaled up deployments of the user
      */
-    private int countDeployments(Integration integration) {
-        String name = integration.getName();
-        String username = integration.getUserId().orElseThrow(() -> new IllegalStateException("Couldn't find the user of the integration"));
-
+    private Set<String> findDeployments(String username) {
         Map<String, String> labels = new HashMap<>();
         labels.put(OpenShiftService.USERNAME_LABEL, Names.sanitize(username));
 
-        return (int) openShiftService().getDeploymentsByLabel(labels)
+        return openShiftService().getDeploymentsByLabel(labels)
             .stream()
-            .filter(d -> !Names.sanitize(name).equals(d.getMetadata().getName())) //this is also called on updates (so we need to exclude)
             .filter(d -> d.getSpec().getReplicas() > 0)
-            .count();
+            .map(d -> d.getMetadata().getName())
+            .collect(Collectors.toCollection(HashSet::new));
     }
 
     private InputStream createProjectFiles(Integration integration) {
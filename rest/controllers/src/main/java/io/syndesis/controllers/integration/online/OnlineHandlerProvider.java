@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import io.syndesis.controllers.ControllersConfigurationProperties;
+import io.syndesis.controllers.integration.ActiveIntegrationIndex;
 import io.syndesis.dao.manager.EncryptionComponent;
 import io.syndesis.controllers.integration.StatusChangeHandlerProvider;
 import io.syndesis.dao.manager.DataManager;
@@ -35,13 +36,15 @@ public class OnlineHandlerProvider extends BaseHandler implements StatusChangeHa
     private final ProjectGenerator projectGenerator;
     private final ControllersConfigurationProperties properties;
     private final EncryptionComponent encryptionComponent;
+    private final ActiveIntegrationIndex activeIntegrationIndex;
 
     public OnlineHandlerProvider(
             DataManager dataManager,
             OpenShiftService openShiftService,
             ProjectGenerator projectGenerator,
             ControllersConfigurationProperties properties,
-            EncryptionComponent encryptionComponent) {
+            EncryptionComponent encryptionComponent,
+            ActiveIntegrationIndex activeIntegrationIndex) {
 
         super(openShiftService);
 
@@ -49,6 +52,7 @@ public class OnlineHandlerProvider extends BaseHandler implements StatusChangeHa
         this.projectGenerator = projectGenerator;
         this.properties = properties;
         this.encryptionComponent = encryptionComponent;
+        this.activeIntegrationIndex = activeIntegrationIndex;
     }
 
     @Override
@@ -59,7 +63,8 @@ public class OnlineHandlerProvider extends BaseHandler implements StatusChangeHa
                 openShiftService(),
                 projectGenerator,
                 properties,
-                encryptionComponent
+                encryptionComponent,
+                activeIntegrationIndex
             ),
             new DeactivateHandler(openShiftService()),
             new DeleteHandler(openShiftService()));
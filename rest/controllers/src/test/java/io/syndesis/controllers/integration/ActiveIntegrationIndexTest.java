@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import io.syndesis.core.EventBus;
+import io.syndesis.dao.manager.DataManager;
+import io.syndesis.model.ChangeEvent;
+import io.syndesis.model.Kind;
+import io.syndesis.model.integration.Integration;
+import io.syndesis.model.integration.IntegrationRevision;
+import io.syndesis.model.integration.IntegrationRevisionState;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ActiveIntegrationIndexTest {
+
+    @Test
+    public void shouldTrackActiveIntegrationsByUser() throws Exception {
+        final DataManager dataManager = mock(DataManager.class);
+        final EventBus eventBus = mock(EventBus.class);
+        when(dataManager.streamAll(Integration.class)).thenReturn(Stream.of(
+            integration("1", "alice", IntegrationRevisionState.Active),
+            integration("2", "alice", IntegrationRevisionState.Active),
+            integration("3", "alice", IntegrationRevisionState.Inactive),
+            integration("4", "bob", IntegrationRevisionState.Active)));
+
+        final ActiveIntegrationIndex index = new ActiveIntegrationIndex(dataManager, eventBus);
+        index.start();
+        try {
+            assertThat(index.countActiveIntegrations("alice", null)).isEqualTo(2);
+            assertThat(index.countActiveIntegrations("alice", "1")).isEqualTo(1);
+            assertThat(index.countActiveIntegrations("alice", "3")).isEqualTo(2);
+            assertThat(index.countActiveIntegrations("bob", null)).isEqualTo(1);
+            assertThat(index.countActiveIntegrations("carol", null)).isZero();
+
+            final ArgumentCaptor<EventBus.Subscription> subscription = ArgumentCaptor.forClass(EventBus.Subscription.class);
+            verify(eventBus).subscribe(eq("active-integration-index"), subscription.capture());
+
+            // Integration 3 gets activated, integration 1 deleted
+            when(dataManager.fetch(Integration.class, "3")).thenReturn(integration("3", "alice", IntegrationRevisionState.Active));
+            subscription.getValue().onEvent("change-event", changeEvent("3"));
+            subscription.getValue().onEvent("change-event", changeEvent("1"));
+            index.executor.submit(() -> { }).get();
+
+            assertThat(index.countActiveIntegrations("alice", null)).isEqualTo(2);
+            assertThat(index.countActiveIntegrations("alice", "1")).isEqualTo(2);
+            assertThat(index.countActiveIntegrations("alice", "3")).isEqualTo(1);
+        } finally {
+            index.stop();
+        }
+    }
+
+    private static String changeEvent(String id) {
+        return ChangeEvent.of("updated", Kind.Integration.getModelName(), id).toJson();
+    }
+
+    private static Integration integration(String id, String user, IntegrationRevisionState state) {
+        final Integration integration = new Integration.Builder()
+            .id(id)
+            .name("test-" + id)
+            .userId(user)
+            .build();
+        return new Integration.Builder()
+            .createFrom(integration)
+            .deployedRevisionId(1)
+            .revisions(Arrays.asList(IntegrationRevision.createNewRevision(integration).withVersion(1).withCurrentState(state)))
+            .build();
+    }
+}
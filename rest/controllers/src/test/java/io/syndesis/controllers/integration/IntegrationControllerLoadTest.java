@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.syndesis.controllers.ControllersConfigurationProperties;
+import io.syndesis.controllers.integration.online.OnlineHandlerProvider;
+import io.syndesis.core.EventBus;
+import io.syndesis.dao.manager.DataManager;
+import io.syndesis.dao.manager.EncryptionComponent;
+import io.syndesis.model.ListResult;
+import io.syndesis.model.connection.Connector;
+import io.syndesis.model.integration.Integration;
+import io.syndesis.model.integration.IntegrationRevision;
+import io.syndesis.openshift.OpenShiftService;
+import io.syndesis.openshift.OpenShiftServiceNoOp;
+import io.syndesis.project.converter.ProjectGenerator;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Activates many integrations at once against the no-op OpenShift service, with a
+ * slow project generation standing in for the build.
+ */
+public class IntegrationControllerLoadTest {
+
+    private static final int INTEGRATIONS = 200;
+    private static final int WORKERS = 8;
+    private static final long BUILD_MILLIS = 20;
+
+    @Test
+    @SuppressWarnings({"PMD.DoNotUseThreads", "PMD.ExcessiveMethodLength"})
+    public void shouldActivateIntegrationsInParallel() throws Exception {
+        final Map<String, Integration> integrations = new ConcurrentHashMap<>();
+        final List<Integration> initial = new ArrayList<>();
+        for (int i = 0; i < INTEGRATIONS; i++) {
+            Integration integration = new Integration.Builder()
+                .id("i-" + i)
+                .name("integration-" + i)
+                .userId("user-" + i)
+                .desiredStatus(Integration.Status.Activated)
+                .currentStatus(Integration.Status.Draft)
+                .createdDate(new Date())
+                .addRevision(new IntegrationRevision.Builder().version(1).build())
+                .build();
+            integrations.put("i-" + i, integration);
+            initial.add(integration);
+        }
+
+        final DataManager dataManager = mock(DataManager.class);
+        when(dataManager.fetchAll(Connector.class)).thenReturn(ListResult.of(Collections.emptyList()));
+        when(dataManager.streamAll(Integration.class)).thenAnswer(invocation -> initial.stream());
+        when(dataManager.fetch(eq(Integration.class), anyString()))
+            .thenAnswer(invocation -> integrations.get(invocation.getArgumentAt(1, String.class)));
+
+        final Map<String, AtomicInteger> builds = new ConcurrentHashMap<>();
+        final AtomicInteger deployedBeforeBuilt = new AtomicInteger();
+        final CountDownLatch activated = new CountDownLatch(INTEGRATIONS);
+        doAnswer(invocation -> {
+            Integration updated = invocation.getArgumentAt(0, Integration.class);
+            integrations.put(updated.getId().get(), updated);
+            if (updated.getStepsDone().contains("deploy")) {
+                if (!builds.containsKey(updated.getName())) {
+                    deployedBeforeBuilt.incrementAndGet();
+                }
+                activated.countDown();
+            }
+            return null;
+        }).when(dataManager).update(any(Integration.class));
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch allWorkersBusy = new CountDownLatch(WORKERS);
+        final Set<String> building = ConcurrentHashMap.newKeySet();
+        final AtomicInteger sameIntegrationOverlaps = new AtomicInteger();
+        final ProjectGenerator projectGenerator = mock(ProjectGenerator.class);
+        when(projectGenerator.generate(any(Integration.class))).thenAnswer(invocation -> {
+            String name = invocation.getArgumentAt(0, Integration.class).getName();
+            if (!building.add(name)) {
+                sameIntegrationOverlaps.incrementAndGet();
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            // The first builds wait for each other, which they only can if they
+            // run on all the workers at the same time
+            allWorkersBusy.countDown();
+            allWorkersBusy.await(10, TimeUnit.SECONDS);
+            Thread.sleep(BUILD_MILLIS);
+            running.decrementAndGet();
+            builds.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+            building.remove(name);
+            return new ByteArrayInputStream(new byte[0]);
+        });
+
+        final ControllersConfigurationProperties properties = new ControllersConfigurationProperties();
+        properties.setMaxIntegrationsPerUser(ControllersConfigurationProperties.UNLIMITED);
+        properties.setMaxDeploymentsPerUser(ControllersConfigurationProperties.UNLIMITED);
+        properties.setIntegrationWorkerThreads(WORKERS);
+
+        final OpenShiftService openShiftService = new OpenShiftServiceNoOp();
+        final OnlineHandlerProvider handlers = new OnlineHandlerProvider(dataManager, openShiftService, projectGenerator,
+            properties, new EncryptionComponent(null), new ActiveIntegrationIndex(dataManager, mock(EventBus.class)));
+        final IntegrationController controller = new IntegrationController(dataManager, mock(EventBus.class), handlers,
+            openShiftService, properties);
+
+        controller.start();
+        try {
+            assertThat(activated.await(60, TimeUnit.SECONDS)).isTrue();
+
+            // Different integrations are built on all the workers, never more
+            assertThat(allWorkersBusy.getCount()).isZero();
+            assertThat(maxRunning.get()).isEqualTo(WORKERS);
+
+            // The work of each integration runs in order, one step at a time
+            assertThat(sameIntegrationOverlaps.get()).isZero();
+            assertThat(deployedBeforeBuilt.get()).isZero();
+            assertThat(builds).hasSize(INTEGRATIONS);
+            assertThat(builds.values()).allSatisfy(count -> assertThat(count.get()).isEqualTo(1));
+            assertThat(controller.getExecutor().getCompletedCount()).isGreaterThanOrEqualTo(INTEGRATIONS);
+            assertThat(controller.getExecutor().getRejectedCount()).isZero();
+        } finally {
+            controller.stop();
+        }
+    }
+}
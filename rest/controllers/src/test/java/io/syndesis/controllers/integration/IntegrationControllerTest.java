@@ -15,12 +15,15 @@
  */
 package io.syndesis.controllers.integration;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import io.syndesis.controllers.ControllersConfigurationProperties;
 import io.syndesis.controllers.integration.StatusChangeHandlerProvider.StatusChangeHandler;
 import io.syndesis.controllers.integration.StatusChangeHandlerProvider.StatusChangeHandler.StatusUpdate;
 import io.syndesis.core.EventBus;
@@ -28,14 +31,21 @@ import io.syndesis.dao.manager.DataManager;
 import io.syndesis.model.integration.Integration;
 import io.syndesis.model.integration.Integration.Status;
 import io.syndesis.model.integration.IntegrationRevision;
+import io.syndesis.openshift.OpenShiftService;
+import io.syndesis.openshift.OpenShiftServiceNoOp;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IntegrationControllerTest {
@@ -50,9 +60,9 @@ public class IntegrationControllerTest {
         final StatusChangeHandlerProvider handlerFactory = mock(StatusChangeHandlerProvider.class);
 
         final IntegrationController integrationController = new IntegrationController(dataManager, eventBus,
-            handlerFactory);
+            handlerFactory, new OpenShiftServiceNoOp(), new ControllersConfigurationProperties());
 
-        integrationController.executor = mock(ExecutorService.class);
+        integrationController.executor = mock(KeyedExecutor.class);
         integrationController.scheduler = mock(ScheduledExecutorService.class);
 
         final StatusChangeHandler handler = mock(StatusChangeHandler.class);
@@ -68,10 +78,10 @@ public class IntegrationControllerTest {
         final AtomicReference<Integration> currentIntegration = new AtomicReference<>(integration);
         when(dataManager.fetch(Integration.class, INTEGRATION_ID)).thenAnswer(invocation -> currentIntegration.get());
 
-        when(integrationController.executor.submit(any(Runnable.class))).then(invocation -> {
-            invocation.getArgumentAt(0, Runnable.class).run();
+        doAnswer(invocation -> {
+            invocation.getArgumentAt(1, Runnable.class).run();
             return null;
-        });
+        }).when(integrationController.executor).execute(anyString(), any(Runnable.class));
 
         final ArgumentCaptor<Integration> updatedIntegrations = ArgumentCaptor.forClass(Integration.class);
         doNothing().when(dataManager).update(updatedIntegrations.capture());
@@ -88,4 +98,38 @@ public class IntegrationControllerTest {
         integrationController.callStatusChangeHandler(handler, INTEGRATION_ID);
         assertThat(updatedIntegrations.getAllValues().get(2).getRevisions()).hasSize(4);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldCheckIntegrationOnDeploymentStatusChange() {
+        final DataManager dataManager = mock(DataManager.class);
+        final OpenShiftService openShiftService = mock(OpenShiftService.class);
+        final ArgumentCaptor<Consumer<String>> listener = ArgumentCaptor.forClass(Consumer.class);
+        when(openShiftService.addStatusListener(listener.capture())).thenReturn(true);
+
+        final StatusChangeHandler handler = mock(StatusChangeHandler.class);
+        when(handler.getTriggerStatuses()).thenReturn(EnumSet.of(Status.Activated));
+        when(handler.execute(any(Integration.class))).thenReturn(new StatusUpdate(Status.Pending));
+        final StatusChangeHandlerProvider handlerFactory = mock(StatusChangeHandlerProvider.class);
+        when(handlerFactory.getStatusChangeHandlers()).thenReturn(Collections.singletonList(handler));
+
+        final Integration integration = new Integration.Builder().id(INTEGRATION_ID).name("My Integration")
+            .desiredStatus(Status.Activated).currentStatus(Status.Pending).createdDate(new Date())
+            .addRevision(new IntegrationRevision.Builder().version(1).build()).build();
+        when(dataManager.streamAll(Integration.class)).thenAnswer(invocation -> Stream.of(integration));
+        when(dataManager.fetch(Integration.class, INTEGRATION_ID)).thenReturn(integration);
+
+        final IntegrationController integrationController = new IntegrationController(dataManager, mock(EventBus.class),
+            handlerFactory, openShiftService, new ControllersConfigurationProperties());
+        integrationController.start();
+        try {
+            verify(handler, timeout(5000).times(1)).execute(any(Integration.class));
+
+            listener.getValue().accept("my-integration");
+            verify(handler, timeout(5000).times(2)).execute(any(Integration.class));
+        } finally {
+            integrationController.stop();
+        }
+        verify(openShiftService).removeStatusListener(listener.getValue());
+    }
 }
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class KeyedExecutorTest {
+
+    @Test
+    public void shouldRunTasksOfTheSameKeyInOrder() throws InterruptedException {
+        KeyedExecutor executor = new KeyedExecutor("test", 4);
+        try {
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(50);
+
+            for (int i = 0; i < 50; i++) {
+                int task = i;
+                executor.execute("key", () -> {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    order.add(task);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(overlaps.get()).isZero();
+            for (int i = 0; i < 50; i++) {
+                assertThat(order.get(i)).isEqualTo(i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRunTasksOfDifferentKeysInParallel() throws InterruptedException {
+        KeyedExecutor executor = new KeyedExecutor("test", 2);
+        try {
+            CountDownLatch bothStarted = new CountDownLatch(2);
+            CountDownLatch done = new CountDownLatch(2);
+            for (String key : new String[] {"a", "b"}) {
+                executor.execute(key, () -> {
+                    bothStarted.countDown();
+                    try {
+                        // Only returns if the other task runs at the same time
+                        if (bothStarted.await(10, TimeUnit.SECONDS)) {
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldKeepRunningTheTasksOfAKeyAfterAFailure() throws InterruptedException {
+        KeyedExecutor executor = new KeyedExecutor("test", 1);
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute("key", () -> {
+                throw new IllegalStateException("expected");
+            });
+            executor.execute("key", done::countDown);
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(executor.getQueueDepth()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRejectTasksBeyondTheMaximumQueued() throws InterruptedException {
+        KeyedExecutor executor = new KeyedExecutor("test", 1, 2);
+        try {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(3);
+            executor.execute("a", () -> {
+                running.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+            assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // The running task isn't queued anymore, the next two wait
+            executor.execute("a", done::countDown);
+            executor.execute("b", done::countDown);
+            assertThatThrownBy(() -> executor.execute("c", done::countDown))
+                .isInstanceOf(RejectedExecutionException.class);
+            assertThat(executor.getQueueDepth()).isEqualTo(2);
+            assertThat(executor.getRejectedCount()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.controllers.integration.online;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.syndesis.controllers.ControllersConfigurationProperties;
+import io.syndesis.controllers.integration.ActiveIntegrationIndex;
+import io.syndesis.controllers.integration.StatusChangeHandlerProvider.StatusChangeHandler.StatusUpdate;
+import io.syndesis.core.EventBus;
+import io.syndesis.dao.manager.DataManager;
+import io.syndesis.dao.manager.EncryptionComponent;
+import io.syndesis.model.ListResult;
+import io.syndesis.model.action.ConnectorAction;
+import io.syndesis.model.action.ConnectorDescriptor;
+import io.syndesis.model.connection.Connection;
+import io.syndesis.model.connection.Connector;
+import io.syndesis.model.integration.Integration;
+import io.syndesis.model.integration.SimpleStep;
+import io.syndesis.openshift.DeploymentData;
+import io.syndesis.openshift.OpenShiftService;
+import io.syndesis.project.converter.ProjectGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ActivateHandlerTest {
+
+    private static final String TIMER_GAV = "io.syndesis:timer-connector:1.0";
+
+    private final DataManager dataManager = mock(DataManager.class);
+    private final OpenShiftService openShiftService = mock(OpenShiftService.class);
+    private final ProjectGenerator projectGenerator = mock(ProjectGenerator.class);
+    private final ControllersConfigurationProperties properties = new ControllersConfigurationProperties();
+
+    private ActivateHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        when(dataManager.fetchAll(Connector.class)).thenReturn(
+            ListResult.of(Collections.singletonList(new Connector.Builder().id("timer").build())));
+
+        Map<String, byte[]> configuration = new HashMap<>();
+        configuration.put("syndesis.yml", "steps: []".getBytes(StandardCharsets.UTF_8));
+        configuration.put("application.properties", "spring.main.banner-mode = off".getBytes(StandardCharsets.UTF_8));
+        when(projectGenerator.generateConfiguration(any(Integration.class))).thenReturn(configuration);
+
+        properties.setMaxIntegrationsPerUser(ControllersConfigurationProperties.UNLIMITED);
+        properties.setMaxDeploymentsPerUser(ControllersConfigurationProperties.UNLIMITED);
+        properties.setPrebuiltRuntimeImage("syndesis/runtime:latest");
+        properties.getPrebuiltRuntimeConnectors().add(TIMER_GAV);
+
+        handler = new ActivateHandler(dataManager, openShiftService, projectGenerator, properties, new EncryptionComponent(null),
+            new ActiveIntegrationIndex(dataManager, mock(EventBus.class)));
+    }
+
+    @Test
+    public void shouldDeployOnPrebuiltRuntimeWithoutBuild() throws Exception {
+        StatusUpdate update = handler.execute(integrationUsing(TIMER_GAV));
+
+        assertThat(update.getStatusMessage()).isNull();
+        assertThat(update.getStepsPerformed()).containsExactly("deploy");
+
+        ArgumentCaptor<DeploymentData> data = ArgumentCaptor.forClass(DeploymentData.class);
+        verify(openShiftService, never()).build(anyString(), any(DeploymentData.class), any(InputStream.class));
+        verify(openShiftService).deploy(eq("test"), data.capture());
+
+        assertThat(data.getValue().getImage()).isEqualTo("syndesis/runtime:latest");
+        assertThat(data.getValue().getSecret()).containsEntry("syndesis.yml", "steps: []");
+        assertThat(data.getValue().getSecret().get("application.properties")).startsWith("spring.main.banner-mode = off\n");
+    }
+
+    @Test
+    public void shouldBuildWhenConnectorIsNotPrebuilt() throws Exception {
+        when(projectGenerator.generate(any(Integration.class))).thenReturn(mock(InputStream.class));
+
+        handler.execute(integrationUsing("io.syndesis:twitter-connector:1.0"));
+
+        ArgumentCaptor<DeploymentData> data = ArgumentCaptor.forClass(DeploymentData.class);
+        verify(openShiftService).build(eq("test"), data.capture(), any(InputStream.class));
+        verify(openShiftService).deploy(eq("test"), any(DeploymentData.class));
+        verify(projectGenerator, never()).generateConfiguration(any(Integration.class));
+
+        assertThat(data.getValue().getImage()).isNull();
+        assertThat(data.getValue().getSecret()).containsOnlyKeys("application.properties");
+    }
+
+    @Test
+    public void shouldCloseProjectFilesWhenBuildFails() throws Exception {
+        InputStream tar = mock(InputStream.class);
+        when(projectGenerator.generate(any(Integration.class))).thenReturn(tar);
+        doThrow(new IOException("Build failed")).when(openShiftService).build(anyString(), any(DeploymentData.class), any(InputStream.class));
+
+        StatusUpdate update = handler.execute(integrationUsing("io.syndesis:twitter-connector:1.0"));
+
+        assertThat(update.getStatus()).isEqualTo(Integration.Status.Pending);
+        verify(tar).close();
+        verify(openShiftService, never()).deploy(anyString(), any(DeploymentData.class));
+    }
+
+    @Test
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    public void shouldCountDeploymentsBeingActivated() throws Exception {
+        properties.setMaxDeploymentsPerUser(1);
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch built = new CountDownLatch(1);
+        when(projectGenerator.generate(any(Integration.class))).thenAnswer(invocation -> {
+            building.countDown();
+            built.await(10, TimeUnit.SECONDS);
+            return mock(InputStream.class);
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<StatusUpdate> first = executor.submit(() -> handler.execute(integrationUsing("test", "io.syndesis:twitter-connector:1.0")));
+            assertThat(building.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // The first deployment doesn't exist yet, but counts already
+            StatusUpdate second = handler.execute(integrationUsing("other", "io.syndesis:twitter-connector:1.0"));
+            assertThat(second.getStatus()).isEqualTo(Integration.Status.Deactivated);
+
+            built.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS).getStatusMessage()).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(openShiftService).deploy(eq("test"), any(DeploymentData.class));
+        verify(openShiftService, never()).deploy(eq("other"), any(DeploymentData.class));
+    }
+
+    private static Integration integrationUsing(String gav) {
+        return integrationUsing("test", gav);
+    }
+
+    private static Integration integrationUsing(String name, String gav) {
+        return new Integration.Builder()
+            .id(name + "-id")
+            .name(name)
+            .userId("user")
+            .desiredStatus(Integration.Status.Activated)
+            .addStep(new SimpleStep.Builder()
+                .stepKind("endpoint")
+                .connection(new Connection.Builder()
+                    .id("1")
+                    .connectorId("timer")
+                    .build())
+                .action(new ConnectorAction.Builder()
+                    .descriptor(new ConnectorDescriptor.Builder()
+                        .connectorId("timer")
+                        .camelConnectorPrefix("periodic-timer-connector")
+                        .camelConnectorGAV(gav)
+                        .build())
+                    .build())
+                .build())
+            .build();
+    }
+}
@@ -56,6 +56,18 @@ public interface ExtensionDataAccessObject {
      */
     InputStream read(String path);
 
+    /**
+     * Read a range of a file from a path.
+     *
+     * The path must be absolute (e.g. "/path/to/file.zip").
+     *
+     * @param path the path to read
+     * @param offset the position of the first byte to read
+     * @param length the maximum number of bytes to read
+     * @return the content of the range or null if the file is not present
+     */
+    InputStream read(String path, long offset, long length);
+
     /**
      * Delete a file corresponding to a path.
      *
@@ -41,10 +41,11 @@ public class ExtensionDataManager {
         return extensionDataAccess.read("/extensions/" + id);
     }
 
-    // ==========================================================
-
+    /**
+     * @return the id of the installed version of the extension
+     */
     @Nonnull
-    private String getInstalledPhysicalId(String extensionId) {
+    public String getInstalledPhysicalId(String extensionId) {
         Set<String> ids = dataManager.fetchIdsByPropertyValue(
             Extension.class,
             "extensionId", extensionId,
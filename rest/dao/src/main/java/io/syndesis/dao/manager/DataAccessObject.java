@@ -15,7 +15,9 @@
  */
 package io.syndesis.dao.manager;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import io.syndesis.model.ListResult;
 import io.syndesis.model.WithId;
@@ -56,6 +58,24 @@ public interface DataAccessObject<T extends WithId<T>> {
      */
     ListResult<T> fetchAll();
 
+    /**
+     * Streams all entities so that they can be processed one at a time.
+     * The returned {@link Stream} may hold resources, so it should be closed.
+     * @return  The {@link Stream} of entities.
+     */
+    default Stream<T> streamAll() {
+        return fetchAll().getItems().stream();
+    }
+
+    /**
+     * Gets the version of the stored entities, which changes whenever any of
+     * them is created, updated or deleted, including by other nodes.
+     * @return  The version, or null if it isn't known.
+     */
+    default String getVersion() {
+        return null;
+    }
+
     /**
      * Creates a new entity.
      * @param entity    The entity.
@@ -72,6 +92,20 @@ public interface DataAccessObject<T extends WithId<T>> {
     T update(T entity);
 
 
+    /**
+     * Creates or replaces the specified entities.
+     * Implementations should apply all of them in one go.
+     * @param entities  The entities.
+     */
+    default void setAll(Collection<T> entities) {
+        for (T entity : entities) {
+            if (update(entity) == null) {
+                create(entity);
+            }
+        }
+    }
+
+
     /**
      * Delete the specified entity.
      * @param entity    The entity.
@@ -15,16 +15,21 @@
  */
 package io.syndesis.dao.manager;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityNotFoundException;
 
@@ -51,6 +56,9 @@ public class DataManager implements DataAccessObjectRegistry {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DataManager.class.getName());
 
+    // Holds the fetchAll() results of the kinds backed by a DataAccessObject, keyed by model name.
+    private static final String SNAPSHOT_CACHE = "fetch-all-snapshots";
+
     private final CacheContainer caches;
     private final EventBus eventBus;
     private final EncryptionComponent encryptionComponent;
@@ -64,6 +72,13 @@ public class DataManager implements DataAccessObjectRegistry {
 
     private final List<DataAccessObject<?>> dataAccessObjects = new ArrayList<>();
     private final Map<Class<? extends WithId<?>>, DataAccessObject<?>> dataAccessObjectMapping = new ConcurrentHashMap<>();
+    private final Map<Kind, AtomicLong> snapshotVersions = new ConcurrentHashMap<>();
+    // The DataAccessObject version of each kind when its cached entities and snapshot were dropped last,
+    // other nodes write to the same database without raising events here.
+    private final Map<Kind, String> cachedVersions = new ConcurrentHashMap<>();
+    // Set while this data manager writes through a DAO, the jsondb events of those
+    // writes are delivered on the writing thread and must not evict what we cache.
+    private final ThreadLocal<Boolean> writing = new ThreadLocal<>();
 
     // Inject mandatory via constructor injection.
     @Autowired
@@ -84,6 +99,53 @@ public class DataManager implements DataAccessObjectRegistry {
         for (DataAccessObject<?> dataAccessObject : dataAccessObjects) {
             registerDataAccessObject(dataAccessObject);
         }
+        if (eventBus != null) {
+            eventBus.subscribe("data-manager", getJsonDBEventSubscription());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (eventBus != null) {
+            eventBus.unsubscribe("data-manager");
+        }
+    }
+
+    private EventBus.Subscription getJsonDBEventSubscription() {
+        return (event, data) -> {
+            // Writes can reach the jsondb without going through this data manager,
+            // so drop whatever we cached for the changed path.
+            if (Boolean.TRUE.equals(writing.get())) {
+                return;
+            }
+            if ("jsondb-updated".equals(event) || "jsondb-deleted".equals(event)) {
+                invalidate(data);
+            }
+        };
+    }
+
+    /**
+     * Drops the cached entities and snapshots affected by a change to a jsondb path,
+     * paths are in the form of {@code /<collection>/:<id>/<property>}.
+     */
+    private void invalidate(String path) {
+        String[] segments = (path.startsWith("/") ? path.substring(1) : path).split("/");
+        if (segments[0].isEmpty()) {
+            clearCache();
+            return;
+        }
+
+        for (Kind kind : Kind.values()) {
+            if (segments[0].equals(kind.getModelName() + "s") && getDataAccessObject(kind.getModelClass()) != null) {
+                Map<String, ?> cache = caches.getCache(kind.getModelName());
+                if (segments.length > 1 && segments[1].startsWith(":")) {
+                    cache.remove(segments[1].substring(1));
+                } else {
+                    cache.clear();
+                }
+                invalidateSnapshot(kind);
+            }
+        }
     }
 
     public void resetDeploymentData() {
@@ -99,9 +161,7 @@ public class DataManager implements DataAccessObjectRegistry {
         ReadApiClientData reader = new ReadApiClientData(encryptionComponent);
         try {
             List<ModelData<?>> mdList = reader.readDataFromFile(file);
-            for (ModelData<?> modelData : mdList) {
-                store(modelData);
-            }
+            storeAll(mdList);
         } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception e) {
             throw new IllegalStateException("Cannot read dummy startup data due to: " + e.getMessage(), e);
         }
@@ -137,11 +197,59 @@ public class DataManager implements DataAccessObjectRegistry {
         }
     }
 
+    /**
+     * Stores all the entities, creating or replacing them.  The entities of
+     * each kind are handed to its DataAccessObject in a single batch.
+     */
+    public void storeAll(List<ModelData<?>> modelDataList) {
+        Map<Kind, List<ModelData<?>>> byKind = new LinkedHashMap<>();
+        for (ModelData<?> modelData : modelDataList) {
+            byKind.computeIfAbsent(modelData.getKind(), k -> new ArrayList<>()).add(modelData);
+        }
+        for (Map.Entry<Kind, List<ModelData<?>>> entry : byKind.entrySet()) {
+            storeAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private <T extends WithId<T>> void storeAll(Kind kind, List<ModelData<?>> modelDataList) {
+        Class<T> model = kind.getModelClass();
+
+        // Keyed by id so that the last entity wins, like it does when stored one by one.
+        Map<String, T> entities = new LinkedHashMap<>();
+        for (ModelData<?> modelData : modelDataList) {
+            try {
+                @SuppressWarnings("unchecked")
+                T entity = (T) modelData.getData();
+                Optional<String> id = entity.getId();
+                if (id.isPresent()) {
+                    entities.put(id.get(), entity);
+                } else {
+                    LOGGER.warn("Cannot load entity from file since it's missing an id: {}", modelData.toJson());
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Cannot load entity from file: ", e);
+                throw SyndesisServerException.launderThrowable(e);
+            }
+        }
+
+        writeWithDataAccessObject(model, d -> {
+            d.setAll(entities.values());
+            return null;
+        });
+
+        Map<String, T> cache = caches.getCache(kind.getModelName());
+        cache.putAll(entities);
+        invalidateSnapshot(kind);
+        for (String id : entities.keySet()) {
+            broadcast("updated", kind.getModelName(), id);
+        }
+    }
+
     public <T extends WithId<T>> ListResult<T> fetchAll(Class<T> model, Function<ListResult<T>, ListResult<T>>... operators) {
 
         ListResult<T> result;
         if( getDataAccessObject(model)!=null ) {
-            result = doWithDataAccessObject(model, d -> d.fetchAll());
+            result = fetchAllFromSnapshot(model);
         } else {
             Kind kind = Kind.from(model);
             Cache<String, T> cache = caches.getCache(kind.getModelName());
@@ -154,15 +262,104 @@ public class DataManager implements DataAccessObjectRegistry {
         return result;
     }
 
+    /**
+     * Serves fetchAll() from a snapshot of the whole collection which is reloaded
+     * from the DataAccessObject once any of its entities change, here or on other
+     * nodes as told by the version of the DataAccessObject.
+     */
+    private <T extends WithId<T>> ListResult<T> fetchAllFromSnapshot(Class<T> model) {
+        Kind kind = Kind.from(model);
+        DataAccessObject<T> dataAccessObject = getDataAccessObject(model);
+        if (checkVersion(kind, dataAccessObject) == null) {
+            // Without a version a snapshot could miss the writes of other nodes
+            return dataAccessObject.fetchAll();
+        }
+
+        Cache<String, ListResult<T>> snapshots = caches.getCache(SNAPSHOT_CACHE);
+        AtomicLong version = snapshotVersion(kind);
+        long loadedVersion = version.get();
+
+        ListResult<T> snapshot = snapshots.get(kind.getModelName());
+        if (snapshot == null) {
+            snapshot = dataAccessObject.fetchAll();
+
+            // Don't keep the snapshot if the collection changed while we were loading it.
+            synchronized (version) {
+                if (snapshot != null && loadedVersion == version.get()) {
+                    snapshots.put(kind.getModelName(), snapshot);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the cached entities and the snapshot of a kind when the version of its
+     * DataAccessObject changed since they were last dropped, which catches the
+     * writes of other nodes.  Entities loaded before the drop are not cached.
+     *
+     * @return the version, or null if the DataAccessObject doesn't know it
+     */
+    private <T extends WithId<T>> String checkVersion(Kind kind, DataAccessObject<T> dataAccessObject) {
+        String current = dataAccessObject.getVersion();
+        if (current != null && !current.equals(cachedVersions.get(kind))) {
+            AtomicLong version = snapshotVersion(kind);
+            synchronized (version) {
+                if (!current.equals(cachedVersions.get(kind))) {
+                    caches.getCache(kind.getModelName()).clear();
+                    invalidateSnapshot(kind);
+                    cachedVersions.put(kind, current);
+                }
+            }
+        }
+        return current;
+    }
+
+    private AtomicLong snapshotVersion(Kind kind) {
+        return snapshotVersions.computeIfAbsent(kind, k -> new AtomicLong());
+    }
+
+    private void invalidateSnapshot(Kind kind) {
+        AtomicLong version = snapshotVersion(kind);
+        synchronized (version) {
+            version.incrementAndGet();
+            caches.getCache(SNAPSHOT_CACHE).remove(kind.getModelName());
+        }
+    }
+
+    /**
+     * Streams all the entities of the model so that they can be processed one at a time,
+     * the returned {@link Stream} must be closed.
+     */
+    public <T extends WithId<T>> Stream<T> streamAll(Class<T> model) {
+        if( getDataAccessObject(model)!=null ) {
+            return doWithDataAccessObject(model, d -> d.streamAll());
+        }
+
+        Kind kind = Kind.from(model);
+        Cache<String, T> cache = caches.getCache(kind.getModelName());
+        return cache.values().stream();
+    }
+
     public <T extends WithId<T>> T fetch(Class<T> model, String id) {
         Kind kind = Kind.from(model);
         Map<String, T> cache = caches.getCache(kind.getModelName());
 
+        DataAccessObject<T> dataAccessObject = getDataAccessObject(model);
+        if (dataAccessObject != null) {
+            checkVersion(kind, dataAccessObject);
+        }
+        AtomicLong version = snapshotVersion(kind);
+        long loadedVersion = version.get();
+
         T value = cache.get(id);
-        if ( value == null) {
-            value = doWithDataAccessObject(model, d -> d.fetch(id));
-            if (value != null) {
-                cache.put(id, value);
+        if ( value == null && dataAccessObject != null) {
+            value = dataAccessObject.fetch(id);
+            // Don't keep the entity if the cache was dropped while we were loading it.
+            synchronized (version) {
+                if (value != null && loadedVersion == version.get()) {
+                    cache.put(id, value);
+                }
             }
         }
         return value;
@@ -214,8 +411,9 @@ public class DataManager implements DataAccessObjectRegistry {
             entityToCreate = entity;
         }
 
-        this.<T, T>doWithDataAccessObject(kind.getModelClass(), d -> d.create(entityToCreate));
+        this.<T, T>writeWithDataAccessObject(kind.getModelClass(), d -> d.create(entityToCreate));
         cache.put(idVal, entityToCreate);
+        invalidateSnapshot(kind);
         broadcast("created", kind.getModelName(), idVal);
         return entityToCreate;
     }
@@ -229,7 +427,7 @@ public class DataManager implements DataAccessObjectRegistry {
         String idVal = id.get();
 
         Kind kind = entity.getKind();
-        T previous = this.<T, T>doWithDataAccessObject(kind.getModelClass(), d -> d.update(entity));
+        T previous = this.<T, T>writeWithDataAccessObject(kind.getModelClass(), d -> d.update(entity));
 
         Map<String, T> cache = caches.getCache(kind.getModelName());
         if (!cache.containsKey(idVal) && previous==null) {
@@ -237,6 +435,7 @@ public class DataManager implements DataAccessObjectRegistry {
         }
 
         cache.put(idVal, entity);
+        invalidateSnapshot(kind);
         broadcast("updated", kind.getModelName(), idVal);
 
         //TODO 1. properly merge the data ? + add data validation in the REST Resource
@@ -256,7 +455,8 @@ public class DataManager implements DataAccessObjectRegistry {
         boolean deletedInCache = entity != null;
 
         // And out of the DAO
-        boolean deletedFromDAO = Boolean.TRUE.equals(doWithDataAccessObject(model, d -> d.delete(id)));
+        boolean deletedFromDAO = Boolean.TRUE.equals(writeWithDataAccessObject(model, d -> d.delete(id)));
+        invalidateSnapshot(kind);
 
         // Return true if the entity was found in any of the two.
         if ( deletedInCache || deletedFromDAO ) {
@@ -272,10 +472,11 @@ public class DataManager implements DataAccessObjectRegistry {
         Map<String, WithId<T>> cache = caches.getCache(kind.getModelName());
         cache.clear();
 
-        doWithDataAccessObject(model, d -> {
+        writeWithDataAccessObject(model, d -> {
             d.deleteAll();
             return null;
         });
+        invalidateSnapshot(kind);
     }
 
     @Override
@@ -299,6 +500,22 @@ public class DataManager implements DataAccessObjectRegistry {
         return null;
     }
 
+    /**
+     * Same as {@link #doWithDataAccessObject(Class, Function)} for functions that write,
+     * the jsondb events raised by the write are not used to invalidate the caches.
+     */
+    private <T extends WithId<T>, R> R writeWithDataAccessObject(Class<T> model, Function<DataAccessObject<T>, R> function) {
+        final Boolean outer = writing.get();
+        writing.set(Boolean.TRUE);
+        try {
+            return doWithDataAccessObject(model, function);
+        } finally {
+            if (outer == null) {
+                writing.remove();
+            }
+        }
+    }
+
     private void broadcast(String event, String type, String id) {
         if( eventBus !=null ) {
             eventBus.broadcast("change-event", ChangeEvent.of(event, type, id).toJson());
@@ -308,6 +525,7 @@ public class DataManager implements DataAccessObjectRegistry {
     public void clearCache() {
         for (Kind kind : Kind.values()) {
             caches.getCache(kind.modelName).clear();
+            invalidateSnapshot(kind);
         }
     }
 
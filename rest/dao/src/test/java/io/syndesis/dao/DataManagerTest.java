@@ -15,6 +15,7 @@
  */
 package io.syndesis.dao;
 
+import io.syndesis.core.EventBus;
 import io.syndesis.core.Json;
 import io.syndesis.dao.manager.DataAccessObject;
 import io.syndesis.dao.manager.DataManager;
@@ -29,6 +30,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -39,7 +41,11 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DataManagerTest {
@@ -185,6 +191,106 @@ public class DataManagerTest {
             "prop2", "value2")).isEmpty();
     }
 
+    @Test
+    public void shouldServeFetchAllFromSnapshotUntilInvalidated() {
+        final EventBus eventBus = mock(EventBus.class);
+        final DataManager manager = new DataManager(infinispan.getCaches(), new ArrayList<>(), eventBus, new EncryptionComponent(null));
+        manager.init();
+
+        final ArgumentCaptor<EventBus.Subscription> subscription = ArgumentCaptor.forClass(EventBus.Subscription.class);
+        verify(eventBus).subscribe(eq("data-manager"), subscription.capture());
+
+        @SuppressWarnings("unchecked")
+        final DataAccessObject<Integration> integrationDao = mock(DataAccessObject.class);
+        when(integrationDao.getType()).thenReturn(Integration.class);
+        when(integrationDao.getVersion()).thenReturn("1");
+        when(integrationDao.fetchAll()).thenReturn(ListResult.of(Collections.emptyList()));
+        manager.registerDataAccessObject(integrationDao);
+
+        manager.fetchAll(Integration.class);
+        manager.fetchAll(Integration.class);
+        verify(integrationDao, times(1)).fetchAll();
+
+        subscription.getValue().onEvent("jsondb-updated", "/integrations/:1");
+        manager.fetchAll(Integration.class);
+        verify(integrationDao, times(2)).fetchAll();
+
+        subscription.getValue().onEvent("jsondb-updated", "/connections/:1");
+        manager.fetchAll(Integration.class);
+        verify(integrationDao, times(2)).fetchAll();
+    }
+
+    @Test
+    public void shouldReloadWhenChangedOnAnotherNode() {
+        @SuppressWarnings("unchecked")
+        final DataAccessObject<Integration> integrationDao = mock(DataAccessObject.class);
+        when(integrationDao.getType()).thenReturn(Integration.class);
+        when(integrationDao.getVersion()).thenReturn("1");
+        when(integrationDao.fetchAll()).thenReturn(ListResult.of(Collections.emptyList()));
+        when(integrationDao.fetch("1")).thenReturn(new Integration.Builder().id("1").name("first").build());
+        dataManager.registerDataAccessObject(integrationDao);
+
+        dataManager.fetchAll(Integration.class);
+        dataManager.fetchAll(Integration.class);
+        dataManager.fetch(Integration.class, "1");
+        dataManager.fetch(Integration.class, "1");
+        verify(integrationDao, times(1)).fetchAll();
+        verify(integrationDao, times(1)).fetch("1");
+
+        // written by another node, no event reaches this one
+        when(integrationDao.getVersion()).thenReturn("2");
+        when(integrationDao.fetch("1")).thenReturn(new Integration.Builder().id("1").name("changed").build());
+
+        dataManager.fetchAll(Integration.class);
+        assertThat(dataManager.fetch(Integration.class, "1").getName()).isEqualTo("changed");
+        verify(integrationDao, times(2)).fetchAll();
+        verify(integrationDao, times(2)).fetch("1");
+    }
+
+    @Test
+    public void shouldNotSnapshotWithoutVersion() {
+        @SuppressWarnings("unchecked")
+        final DataAccessObject<Integration> integrationDao = mock(DataAccessObject.class);
+        when(integrationDao.getType()).thenReturn(Integration.class);
+        when(integrationDao.fetchAll()).thenReturn(ListResult.of(Collections.emptyList()));
+        dataManager.registerDataAccessObject(integrationDao);
+
+        dataManager.fetchAll(Integration.class);
+        dataManager.fetchAll(Integration.class);
+        verify(integrationDao, times(2)).fetchAll();
+    }
+
+    @Test
+    public void shouldNotInvalidateOnOwnWrites() {
+        final EventBus eventBus = mock(EventBus.class);
+        final DataManager manager = new DataManager(infinispan.getCaches(), new ArrayList<>(), eventBus, new EncryptionComponent(null));
+        manager.init();
+
+        final ArgumentCaptor<EventBus.Subscription> subscription = ArgumentCaptor.forClass(EventBus.Subscription.class);
+        verify(eventBus).subscribe(eq("data-manager"), subscription.capture());
+
+        @SuppressWarnings("unchecked")
+        final DataAccessObject<Integration> integrationDao = mock(DataAccessObject.class);
+        when(integrationDao.getType()).thenReturn(Integration.class);
+        // the jsondb raises its events on the writing thread
+        when(integrationDao.update(any(Integration.class))).thenAnswer(invocation -> {
+            subscription.getValue().onEvent("jsondb-updated", "/integrations");
+            return null;
+        });
+        manager.registerDataAccessObject(integrationDao);
+
+        manager.create(new Integration.Builder().id("1").name("first").build());
+        manager.create(new Integration.Builder().id("2").name("second").build());
+        manager.update(new Integration.Builder().id("2").name("updated").build());
+
+        assertThat(manager.fetch(Integration.class, "1").getName()).isEqualTo("first");
+        verify(integrationDao, times(0)).fetch("1");
+
+        subscription.getValue().onEvent("jsondb-updated", "/integrations");
+        manager.fetch(Integration.class, "1");
+        verify(integrationDao, times(1)).fetch("1");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void multiplePropertyValuePairsShouldCheckInput() {
         @SuppressWarnings("unchecked")
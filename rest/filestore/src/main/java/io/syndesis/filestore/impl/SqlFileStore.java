@@ -15,50 +15,99 @@
  */
 package io.syndesis.filestore.impl;
 
-import java.io.FilterInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import io.syndesis.dao.extension.ExtensionDataAccessObject;
 import io.syndesis.dao.extension.ExtensionDataAccessException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.postgresql.PGConnection;
 import org.postgresql.largeobject.LargeObject;
 import org.postgresql.largeobject.LargeObjectManager;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.exceptions.DBIException;
 
 /**
  * Implementation of a {@code ExtensionDataAccessObject} backed by a SQL database.
+ *
+ * The content of the files is addressed by its SHA-256 digest and stored in
+ * chunks of {@link #CHUNK_SIZE} bytes, so files with the same content share
+ * their chunks and ranges of a file can be read without reading the whole file.
+ * When a cache directory is given, the content read from the database is kept
+ * there in a file named after its digest, so it is read from the database once.
+ * The cache is bounded, the least recently used content is removed from it when
+ * it grows over its maximum size.
+ *
+ * Writers and deleters of the same content serialize on the first chunk of the
+ * content, and chunks are only inserted when missing, so that concurrent writes
+ * of the same content, or a write racing with the delete of the last file
+ * sharing the content, neither fail nor leave files without chunks.
  */
 @SuppressWarnings("PMD.GodClass")
 public class SqlFileStore implements ExtensionDataAccessObject {
 
+    /**
+     * Size of the chunks of the stored content, ranges are located using it so it must not change.
+     */
+    /* default */ static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Default maximum size of the cache directory, in bytes.
+     */
+    public static final long DEFAULT_MAX_CACHE_SIZE = 512L * 1024 * 1024;
+
     enum DatabaseKind {
         PostgreSQL, H2, Apache_Derby
     }
 
     private final DBI dbi;
 
+    private final Path cacheDirectory;
+
+    private final long maxCacheSize;
+
     private DatabaseKind databaseKind;
 
     public SqlFileStore(DBI dbi) {
+        this(dbi, null);
+    }
+
+    public SqlFileStore(DBI dbi, Path cacheDirectory) {
+        this(dbi, cacheDirectory, DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    public SqlFileStore(DBI dbi, Path cacheDirectory, long maxCacheSize) {
         this.dbi = dbi;
+        this.cacheDirectory = cacheDirectory;
+        this.maxCacheSize = maxCacheSize;
 
         this.databaseKind = dbi.inTransaction((h, s) -> {
             String dbName = h.getConnection().getMetaData().getDatabaseProductName();
@@ -68,33 +117,51 @@ public class SqlFileStore implements ExtensionDataAccessObject {
 
     @Override
     public void init() {
-        boolean needsInitialization = !dbi.inTransaction((h, s) -> tableExists(h, "filestore"));
+        boolean needsInitialization = !dbi.inTransaction((h, s) -> tableExists(h, "filestore_file"));
 
         if (needsInitialization) {
             try {
                 dbi.useHandle(h -> {
                     if (databaseKind == DatabaseKind.PostgreSQL) {
-                        h.execute("CREATE TABLE filestore (path VARCHAR COLLATE \"C\" PRIMARY KEY, data OID)");
+                        h.execute("CREATE TABLE filestore_file (path VARCHAR COLLATE \"C\" PRIMARY KEY, digest VARCHAR(64), file_size BIGINT)");
+                        h.execute("CREATE TABLE filestore_chunk (digest VARCHAR(64), idx INT, data BYTEA, PRIMARY KEY (digest, idx))");
                     } else if (databaseKind == DatabaseKind.H2) {
-                        h.execute("CREATE TABLE filestore (path VARCHAR PRIMARY KEY, data BLOB)");
+                        h.execute("CREATE TABLE filestore_file (path VARCHAR PRIMARY KEY, digest VARCHAR(64), file_size BIGINT)");
+                        h.execute("CREATE TABLE filestore_chunk (digest VARCHAR(64), idx INT, data BLOB, PRIMARY KEY (digest, idx))");
                     } else if (databaseKind == DatabaseKind.Apache_Derby) {
-                        h.execute("CREATE TABLE filestore (path VARCHAR(1000), data BLOB, PRIMARY KEY (path))");
+                        h.execute("CREATE TABLE filestore_file (path VARCHAR(1000), digest VARCHAR(64), file_size BIGINT, PRIMARY KEY (path))");
+                        h.execute("CREATE TABLE filestore_chunk (digest VARCHAR(64), idx INT, data BLOB, PRIMARY KEY (digest, idx))");
                     } else {
                         throw new ExtensionDataAccessException("Unsupported database kind: " + databaseKind);
                     }
+                    h.execute("CREATE INDEX filestore_file_digest ON filestore_file (digest)");
                 });
             } catch (CallbackFailedException ex) {
                 throw new ExtensionDataAccessException("Unable to initialize the filestore", ex);
             }
         }
+
+        if (dbi.inTransaction((h, s) -> tableExists(h, "filestore"))) {
+            migrateLegacyFiles();
+        }
+
+        if (cacheDirectory != null) {
+            try {
+                Files.createDirectories(cacheDirectory);
+            } catch (IOException ex) {
+                throw new ExtensionDataAccessException("Unable to create the filestore cache directory " + cacheDirectory, ex);
+            }
+        }
     }
 
     @SuppressWarnings("PMD.EmptyCatchBlock")
     public void destroy() {
-        try {
-            dbi.useHandle(h -> h.execute("DROP TABLE filestore"));
-        } catch (CallbackFailedException ex) {
-            // simply ignore
+        for (String table : new String[] {"filestore_chunk", "filestore_file", "filestore"}) {
+            try {
+                dbi.useHandle(h -> h.execute("DROP TABLE " + table));
+            } catch (CallbackFailedException ex) {
+                // simply ignore
+            }
         }
     }
 
@@ -103,12 +170,13 @@ public class SqlFileStore implements ExtensionDataAccessObject {
         FileStoreSupport.checkValidPath(path);
         Objects.requireNonNull(file, "file cannot be null");
 
-        try {
+        try (SpooledContent content = spool(file)) {
             dbi.inTransaction((h, status) -> {
-                doWrite(h, path, file);
+                doWrite(h, path, content);
                 return true;
             });
-        } catch (CallbackFailedException ex) {
+            cache(content);
+        } catch (CallbackFailedException | IOException ex) {
             throw new ExtensionDataAccessException("Unable to write on path " + path, ex);
         }
     }
@@ -117,30 +185,44 @@ public class SqlFileStore implements ExtensionDataAccessObject {
     public String writeTemporaryFile(InputStream file) {
         Objects.requireNonNull(file, "file cannot be null");
 
-        try {
-            return dbi.inTransaction((h, status) -> {
-                String path = newRandomTempFilePath();
-                doWrite(h, path, file);
-                return path;
+        try (SpooledContent content = spool(file)) {
+            String path = dbi.inTransaction((h, status) -> {
+                String tempPath = newRandomTempFilePath();
+                doWrite(h, tempPath, content);
+                return tempPath;
             });
-        } catch (CallbackFailedException ex) {
+            cache(content);
+            return path;
+        } catch (CallbackFailedException | IOException ex) {
             throw new ExtensionDataAccessException("Unable to write on temporary path", ex);
         }
     }
 
     @Override
     public InputStream read(String path) {
+        return read(path, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream read(String path, long offset, long length) {
         FileStoreSupport.checkValidPath(path);
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
 
         try {
-            if (databaseKind == DatabaseKind.PostgreSQL) {
-                return doReadPostgres(path);
-            } else if (databaseKind == DatabaseKind.Apache_Derby) {
-                return doReadDerby(path);
-            } else {
-                return dbi.inTransaction((h, status) -> doReadStandard(h, path));
+            FileEntry entry = dbi.inTransaction((h, status) -> findFile(h, path));
+            if (entry == null) {
+                return null;
             }
-        } catch (CallbackFailedException ex) {
+
+            long start = Math.min(offset, entry.size);
+            long end = start + Math.min(length, entry.size - start);
+            if (cacheDirectory != null) {
+                return readCached(entry, start, end);
+            }
+            return new ChunkInputStream(entry.digest, start, end);
+        } catch (CallbackFailedException | IOException ex) {
             throw new ExtensionDataAccessException("Unable to read data from path " + path, ex);
         }
     }
@@ -163,10 +245,10 @@ public class SqlFileStore implements ExtensionDataAccessObject {
 
         try {
             return dbi.inTransaction((h, status) -> {
-                boolean existed = h.select("SELECT 1 from filestore WHERE path=?", fromPath).size() > 0;
+                boolean existed = findFile(h, fromPath) != null;
                 if (existed) {
                     doDelete(h, toPath);
-                    h.update("UPDATE filestore SET path=? WHERE path=?", toPath, fromPath);
+                    h.update("UPDATE filestore_file SET path=? WHERE path=?", toPath, fromPath);
                 }
 
                 return existed;
@@ -178,140 +260,324 @@ public class SqlFileStore implements ExtensionDataAccessObject {
 
     // ============================================================
 
-    private void doWrite(Handle h, String path, InputStream file) {
-        if (databaseKind == DatabaseKind.PostgreSQL) {
-            doWritePostgres(h, path, file);
-        } else if (databaseKind == DatabaseKind.Apache_Derby) {
-            doWriteDerby(h, path, file);
-        } else {
-            doWriteStandard(h, path, file);
+    private void doWrite(Handle h, String path, SpooledContent content) throws IOException {
+        // Content already stored for another path is shared instead of stored again,
+        // the lock keeps it from being deleted until the file referencing it is stored
+        if (content.size > 0 && !lockContent(h, content.digest)) {
+            insertChunks(h, content);
+        }
+
+        FileEntry previous = findFile(h, path);
+        h.update("DELETE FROM filestore_file WHERE path=?", path);
+        h.insert("INSERT INTO filestore_file(path, digest, file_size) values (?,?,?)", path, content.digest, content.size);
+
+        if (previous != null && !previous.digest.equals(content.digest)) {
+            deleteContentIfUnused(h, previous.digest);
         }
     }
 
-    private void doWriteStandard(Handle h, String path, InputStream file) {
-        doDelete(h, path);
-        h.insert("INSERT INTO filestore(path, data) values (?,?)", path, file);
+    private static void insertChunks(Handle h, SpooledContent content) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(content.file)) {
+            int idx = 0;
+            int read;
+            while ((read = IOUtils.read(in, buffer)) > 0) {
+                byte[] chunk = buffer;
+                if (read < CHUNK_SIZE) {
+                    chunk = new byte[read];
+                    System.arraycopy(buffer, 0, chunk, 0, read);
+                }
+                insertChunkIfMissing(h, content.digest, idx++, chunk);
+            }
+        }
     }
 
-    private void doWritePostgres(Handle h, String path, InputStream file) {
-        doDelete(h, path);
+    /**
+     * Inserts a chunk unless it exists, a concurrent writer of the same content may
+     * have inserted it already, or do so before this transaction commits.
+     */
+    private static void insertChunkIfMissing(Handle h, String digest, int idx, byte[] data) {
+        if (!h.select("SELECT 1 FROM filestore_chunk WHERE digest=? AND idx=?", digest, idx).isEmpty()) {
+            return;
+        }
+
+        String checkpoint = "chunk_" + idx;
+        h.checkpoint(checkpoint);
         try {
-            LargeObjectManager lobj = getPostgresConnection(h.getConnection()).getLargeObjectAPI();
-            long oid = lobj.createLO();
-            LargeObject obj = lobj.open(oid, LargeObjectManager.WRITE);
-            try (OutputStream lob = obj.getOutputStream()) {
-                IOUtils.copy(file, lob);
+            h.createStatement("INSERT INTO filestore_chunk(digest, idx, data) values (?,?,?)")
+                .bind(0, digest)
+                .bind(1, idx)
+                .bind(2, (position, statement, ctx) -> statement.setBinaryStream(position, new ByteArrayInputStream(data), data.length))
+                .execute();
+            h.release(checkpoint);
+        } catch (DBIException ex) {
+            if (!isDuplicateKey(ex)) {
+                throw ex;
             }
-
-            h.insert("INSERT INTO filestore(path, data) values (?,?)", path, oid);
-        } catch (IOException | SQLException ex) {
-            throw ExtensionDataAccessException.launderThrowable(ex);
+            // Inserted by a concurrent writer of the same content in the meantime
+            h.rollback(checkpoint);
         }
     }
 
-    private void doWriteDerby(Handle h, String path, InputStream file) {
-        doDelete(h, path);
-        try {
-            Blob blob = h.getConnection().createBlob();
-            try (OutputStream out = blob.setBinaryStream(1)) {
-                IOUtils.copy(file, out);
+    private static boolean isDuplicateKey(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                // Class 23: integrity constraint violation
+                return state != null && state.startsWith("23");
             }
+        }
+        return false;
+    }
+
+    /**
+     * Locks the first chunk of a content, until the end of the transaction, so that
+     * writers and deleters of the same content do not interleave.
+     *
+     * @return true if the content exists
+     */
+    private static boolean lockContent(Handle h, String digest) {
+        return h.update("UPDATE filestore_chunk SET idx=idx WHERE digest=? AND idx=0", digest) > 0;
+    }
 
-            h.insert("INSERT INTO filestore(path, data) values (?,?)", path, blob);
-        } catch (IOException | SQLException ex) {
-            throw ExtensionDataAccessException.launderThrowable(ex);
+    private static void deleteContentIfUnused(Handle h, String digest) {
+        // A concurrent writer that found the content either committed its file
+        // already, which the check below sees, or waits for the delete to finish
+        // and then stores the content again
+        lockContent(h, digest);
+        if (h.select("SELECT 1 FROM filestore_file WHERE digest=?", digest).isEmpty()) {
+            h.update("DELETE FROM filestore_chunk WHERE digest=?", digest);
         }
     }
 
-    private InputStream doReadStandard(Handle h, String path) {
-        List<Map<String, Object>> res = h.select("SELECT data FROM filestore WHERE path=?", path);
+    private static FileEntry findFile(Handle h, String path) {
+        List<Map<String, Object>> res = h.select("SELECT digest, file_size FROM filestore_file WHERE path=?", path);
+        if (res.isEmpty()) {
+            return null;
+        }
 
-        Optional<Blob> blob = res.stream()
-            .map(row -> row.get("data"))
-            .map(Blob.class::cast)
-            .findFirst();
+        Map<String, Object> row = res.get(0);
+        return new FileEntry((String) row.get("digest"), ((Number) row.get("file_size")).longValue());
+    }
 
-        if (blob.isPresent()) {
-            try {
-                return blob.get().getBinaryStream();
-            } catch (SQLException ex) {
-                throw new ExtensionDataAccessException("Unable to read from BLOB", ex);
-            }
+    private boolean doDelete(Handle h, String path) {
+        FileEntry entry = findFile(h, path);
+        if (entry == null) {
+            return false;
         }
 
-        return null;
+        h.update("DELETE FROM filestore_file WHERE path=?", path);
+        deleteContentIfUnused(h, entry.digest);
+        return true;
+    }
+
+    private byte[] readChunk(String digest, int idx) {
+        // Derby needs a transaction to read from a BLOB, and only allows to read it as a stream
+        byte[] chunk = dbi.inTransaction((h, status) -> h.createQuery("SELECT data FROM filestore_chunk WHERE digest=? AND idx=?")
+            .bind(0, digest)
+            .bind(1, idx)
+            .map((index, r, ctx) -> {
+                try (InputStream in = r.getBinaryStream(1)) {
+                    return IOUtils.toByteArray(in);
+                } catch (IOException ex) {
+                    throw new SQLException(ex);
+                }
+            })
+            .first());
+        if (chunk == null) {
+            throw new ExtensionDataAccessException("Missing chunk " + idx + " of content " + digest);
+        }
+        return chunk;
     }
 
     /**
-     * Derby does not allow to read from the blob after the connection has been closed.
-     * It also requires an outcome of commit/rollback.
+     * Writes the content to a temporary file while computing its digest, so that
+     * the content can be looked up by digest before it's written to the database.
      */
-    @SuppressWarnings("PMD.EmptyCatchBlock")
-    private InputStream doReadDerby(String path) {
-        Handle h = dbi.open();
+    private SpooledContent spool(InputStream file) throws IOException {
+        Path spoolFile = cacheDirectory == null
+            ? Files.createTempFile("filestore-", ".tmp")
+            : Files.createTempFile(cacheDirectory, "filestore-", ".tmp");
+
         try {
-            h.getConnection().setAutoCommit(false);
+            DigestInputStream in = new DigestInputStream(file, newDigest());
+            long size;
+            try (OutputStream out = Files.newOutputStream(spoolFile)) {
+                size = IOUtils.copyLarge(in, out);
+            }
+            return new SpooledContent(spoolFile, toHex(in.getMessageDigest().digest()), size);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(spoolFile);
+            throw ex;
+        }
+    }
 
-            List<Map<String, Object>> res = h.select("SELECT data FROM filestore WHERE path=?", path);
+    /**
+     * Keeps the spooled content of a successful write as the cached copy of its digest.
+     */
+    private void cache(SpooledContent content) throws IOException {
+        if (cacheDirectory != null) {
+            Files.move(content.file, cacheDirectory.resolve(content.digest), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            trimCache();
+        }
+    }
 
-            Optional<Blob> blob = res.stream()
-                .map(row -> row.get("data"))
-                .map(Blob.class::cast)
-                .findFirst();
+    /**
+     * Removes the least recently used content from the cache until it is within its maximum size.
+     */
+    @SuppressWarnings("PMD.EmptyCatchBlock")
+    private synchronized void trimCache() throws IOException {
+        List<CachedContent> cached = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    continue;
+                }
+                try {
+                    CachedContent content = new CachedContent(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                    cached.add(content);
+                    total += content.size;
+                } catch (NoSuchFileException ex) {
+                    // removed in the meantime
+                }
+            }
+        }
 
-            if (blob.isPresent()) {
-                return new HandleCloserInputStream(h, blob.get().getBinaryStream());
-            } else {
-                h.commit();
-                h.close();
-                return null;
+        if (total <= maxCacheSize) {
+            return;
+        }
+        cached.sort(Comparator.comparingLong(c -> c.lastUsed));
+        for (CachedContent content : cached) {
+            if (total <= maxCacheSize) {
+                break;
             }
+            Files.deleteIfExists(content.file);
+            total -= content.size;
+        }
+    }
 
-        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception e) {
-            // Do cleanup
+    private InputStream readCached(FileEntry entry, long start, long end) throws IOException {
+        Path cached = cacheDirectory.resolve(entry.digest);
+        boolean downloaded = false;
+        if (!Files.exists(cached) || Files.size(cached) != entry.size) {
+            Path download = Files.createTempFile(cacheDirectory, "filestore-", ".tmp");
             try {
-                h.rollback();
-            } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception ex) {
-                // ignore
+                try (InputStream in = new ChunkInputStream(entry.digest, 0, entry.size)) {
+                    Files.copy(in, download, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(download, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(download);
             }
-            IOUtils.closeQuietly(h);
+            downloaded = true;
+        }
+
+        InputStream in;
+        try {
+            if (!downloaded) {
+                // The modification time tells the least recently used content to evict
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            in = Files.newInputStream(cached);
+        } catch (NoSuchFileException ex) {
+            // Evicted in the meantime
+            return new ChunkInputStream(entry.digest, start, end);
+        }
+        try {
+            IOUtils.skipFully(in, start);
+            if (downloaded) {
+                trimCache();
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        return new BoundedInputStream(in, end - start);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
 
-            throw ExtensionDataAccessException.launderThrowable(e);
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
         }
+        return hex.toString();
     }
 
+    // ============================================================
+    // Migration of the files stored in a single large object or BLOB
+
     /**
-     * Postgres does not allow to read from the large object after the connection has been closed.
+     * Copies the legacy files and drops their table in a single transaction that
+     * locks the table first, so that instances starting together migrate the files
+     * once, the others find the table dropped when they get the lock.
      */
-    private InputStream doReadPostgres(String path) {
-        Handle h = dbi.open();
+    private void migrateLegacyFiles() {
         try {
-            h.getConnection().setAutoCommit(false);
+            dbi.inTransaction((h, status) -> {
+                lockLegacyTable(h);
+                for (String path : h.createQuery("SELECT path FROM filestore").mapTo(String.class).list()) {
+                    migrateLegacyFile(h, path);
+                }
 
-            List<Map<String, Object>> res = h.select("SELECT data FROM filestore WHERE path=?", path);
+                if (databaseKind == DatabaseKind.PostgreSQL) {
+                    h.execute("SELECT lo_unlink(data) FROM filestore");
+                }
+                h.execute("DROP TABLE filestore");
+                return true;
+            });
+        } catch (DBIException ex) {
+            if (dbi.inTransaction((h, s) -> tableExists(h, "filestore"))) {
+                throw new ExtensionDataAccessException("Unable to migrate the filestore", ex);
+            }
+            // Migrated by another instance in the meantime
+        }
+    }
 
-            Optional<Long> oid = res.stream()
-                .map(row -> row.get("data"))
-                .map(Long.class::cast)
-                .findFirst();
+    private void lockLegacyTable(Handle h) {
+        if (databaseKind == DatabaseKind.H2) {
+            // H2 has no LOCK TABLE, the rows locked for update keep other migrations waiting
+            h.select("SELECT path FROM filestore FOR UPDATE");
+        } else {
+            h.execute("LOCK TABLE filestore IN EXCLUSIVE MODE");
+        }
+    }
 
-            if (oid.isPresent()) {
-                LargeObjectManager lobj = getPostgresConnection(h.getConnection()).getLargeObjectAPI();
-                LargeObject obj = lobj.open(oid.get(), LargeObjectManager.READ);
-                return new HandleCloserInputStream(h, obj.getInputStream());
-            } else {
-                h.close();
-                return null;
+    private void migrateLegacyFile(Handle h, String path) throws IOException, SQLException {
+        try (InputStream in = readLegacy(h, path)) {
+            if (in != null) {
+                try (SpooledContent content = spool(in)) {
+                    doWrite(h, path, content);
+                }
             }
-
-        } catch (SQLException e) {
-            IOUtils.closeQuietly(h);
-            throw ExtensionDataAccessException.launderThrowable(e);
         }
     }
 
-    private boolean doDelete(Handle h, String path) {
-        return h.update("DELETE FROM filestore WHERE path=?", path) > 0;
+    /**
+     * Derby and Postgres only allow to read the BLOB or the large object within the
+     * transaction that selected it, the migration reads each file in its transaction.
+     */
+    private InputStream readLegacy(Handle h, String path) throws SQLException {
+        List<Map<String, Object>> res = h.select("SELECT data FROM filestore WHERE path=?", path);
+        if (res.isEmpty()) {
+            return null;
+        }
+
+        Object data = res.get(0).get("data");
+        if (databaseKind == DatabaseKind.PostgreSQL) {
+            LargeObjectManager lobj = getPostgresConnection(h.getConnection()).getLargeObjectAPI();
+            LargeObject obj = lobj.open((Long) data, LargeObjectManager.READ);
+            return obj.getInputStream();
+        }
+        return ((Blob) data).getBinaryStream();
     }
 
     private PGConnection getPostgresConnection(Connection conn) throws SQLException {
@@ -321,6 +587,8 @@ public class SqlFileStore implements ExtensionDataAccessObject {
         return conn.unwrap(PGConnection.class);
     }
 
+    // ============================================================
+
     private String newRandomTempFilePath() {
         SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd-HH-mm", Locale.ROOT);
         return "/tmp/" + fmt.format(new Date()) + "_" + UUID.randomUUID();
@@ -350,29 +618,115 @@ public class SqlFileStore implements ExtensionDataAccessObject {
     }
 
     /**
-     * Allows closing a handle after the given {@link InputStream} has been fully read and closed.
+     * The digest and size of the content stored at a path.
      */
-    static class HandleCloserInputStream extends FilterInputStream {
+    private static final class FileEntry {
+        private final String digest;
+        private final long size;
 
-        private Handle handle;
+        /* default */ FileEntry(String digest, long size) {
+            this.digest = digest;
+            this.size = size;
+        }
+    }
 
-        public HandleCloserInputStream(Handle handle, InputStream in) {
-            super(in);
-            this.handle = handle;
+    /**
+     * A content in the cache directory, with its size and when it was last used.
+     */
+    private static final class CachedContent {
+        private final Path file;
+        private final long size;
+        private final long lastUsed;
+
+        /* default */ CachedContent(Path file, long size, long lastUsed) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Content written to a local file and its digest, the file is removed on close
+     * unless it has been moved to the cache.
+     */
+    private static final class SpooledContent implements AutoCloseable {
+        private final Path file;
+        private final String digest;
+        private final long size;
+
+        /* default */ SpooledContent(Path file, String digest, long size) {
+            this.file = file;
+            this.digest = digest;
+            this.size = size;
         }
 
         @Override
-        @SuppressWarnings("PMD.EmptyCatchBlock")
         public void close() throws IOException {
-            try {
-                super.close();
-            } finally {
-                try {
-                    handle.commit();
-                } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception ex) {
-                    // ignore
-                }
-                handle.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Streams a range of a content, loading a single chunk at a time from the database.
+     */
+    private final class ChunkInputStream extends InputStream {
+        private final String digest;
+        private final long end;
+        private long position;
+        private byte[] chunk;
+        private int chunkIdx = -1;
+
+        /* default */ ChunkInputStream(String digest, long start, long end) {
+            this.digest = digest;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            loadChunk();
+            return chunk[(int) (position++ % CHUNK_SIZE)] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            loadChunk();
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int count = (int) Math.min(Math.min(len, chunk.length - chunkOffset), end - position);
+            System.arraycopy(chunk, chunkOffset, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (chunk == null || position / CHUNK_SIZE != chunkIdx) {
+                return 0;
+            }
+            return (int) Math.min(chunk.length - position % CHUNK_SIZE, end - position);
+        }
+
+        private void loadChunk() {
+            int idx = (int) (position / CHUNK_SIZE);
+            if (idx != chunkIdx) {
+                chunk = readChunk(digest, idx);
+                chunkIdx = idx;
             }
         }
     }
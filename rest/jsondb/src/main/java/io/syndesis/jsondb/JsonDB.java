@@ -20,8 +20,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonParser;
 
 /**
  * Provides a Java API to read/update a Key/Value database presented to the user a
@@ -43,6 +47,16 @@ public interface JsonDB {
      */
     boolean exists(String path);
 
+    /**
+     * Gets the version of the data at a path.  Versions are kept per top level
+     * path and are bumped on every set, update or delete below it, so two reads
+     * returning the same version saw the same data.
+     *
+     * @param path to the json object or value
+     * @return an opaque version string, suitable for use as an entity tag
+     */
+    String getVersion(String path);
+
     /**
      * Fetches all paths that hold the property with the given value.
      * The returned paths are in the form of {@code /<collection>/:<id>}.
@@ -178,8 +192,29 @@ public interface JsonDB {
      */
     Consumer<OutputStream> getAsStreamingOutput(String path, GetOptions options);
 
+    /**
+     * Streams the children of the object at the given path one at a time, each
+     * as a parser over the json tokens of that child.  Lets callers bind large
+     * collections to objects without holding the whole collection in memory
+     * or going through a serialized json document.
+     *
+     * The returned stream holds database resources so it must be closed.
+     *
+     * @param path to the json object holding the children
+     * @return a stream of parsers, empty if the path does not exist
+     */
+    Stream<JsonParser> getChildrenAsParsers(String path);
+
     void set(String path, InputStream body);
 
+    /**
+     * Creates or Replaces the objects or values at all the given paths
+     * in a single transaction.  The paths must not be nested in each other.
+     *
+     * @param bodies the json values to set keyed by path
+     */
+    void setAll(Map<String, InputStream> bodies);
+
     void update(String path, InputStream body);
 
     String push(String path, InputStream body);
@@ -15,15 +15,16 @@
  */
 package io.syndesis.jsondb.dao;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Collections;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.MapType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import io.syndesis.core.SyndesisServerException;
 import io.syndesis.core.Json;
 import io.syndesis.dao.manager.DataAccessObject;
@@ -63,24 +64,29 @@ public abstract class JsonDbDao<T extends WithId<T>> implements DataAccessObject
 
     @Override
     public ListResult<T> fetchAll() {
-        try {
-            // get the data out..
-            byte[] json = jsondb.getAsByteArray(getCollectionPath());
-            if( json!=null && json.length > 0 ) {
-
-                // Lets use jackson to parse the map of keys to our model instances
-                ObjectMapper mapper = Json.mapper();
-                TypeFactory typeFactory = mapper.getTypeFactory();
-                MapType mapType = typeFactory.constructMapType(LinkedHashMap.class, String.class, getType());
-                LinkedHashMap<String, T> map = mapper.readValue(json, mapType);
+        try (Stream<T> stream = streamAll()) {
+            return ListResult.of(stream.collect(Collectors.toList()));
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+            throw SyndesisServerException.launderThrowable(e);
+        }
+    }
 
-                return ListResult.of(map.values());
+    @Override
+    public Stream<T> streamAll() {
+        // Bind each entity straight from the json tokens of its records
+        // instead of parsing a json document holding the whole collection.
+        return jsondb.getChildrenAsParsers(getCollectionPath()).map(parser -> {
+            try {
+                return Json.mapper().readValue(parser, getType());
+            } catch (IOException e) {
+                throw SyndesisServerException.launderThrowable(e);
             }
+        });
+    }
 
-            return ListResult.of(Collections.<T>emptyList());
-        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException|IOException e) {
-            throw SyndesisServerException.launderThrowable(e);
-        }
+    @Override
+    public String getVersion() {
+        return jsondb.getVersion(getCollectionPath());
     }
 
     @Override
@@ -128,6 +134,20 @@ public abstract class JsonDbDao<T extends WithId<T>> implements DataAccessObject
         }
     }
 
+    @Override
+    public void setAll(Collection<T> entities) {
+        try {
+            Map<String, InputStream> bodies = new LinkedHashMap<>();
+            for (T entity : entities) {
+                String dbPath = getCollectionPath()+"/:"+entity.getId().get();
+                bodies.put(dbPath, new ByteArrayInputStream(Json.mapper().writeValueAsBytes(entity)));
+            }
+            jsondb.setAll(bodies);
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException|IOException e) {
+            throw SyndesisServerException.launderThrowable(e);
+        }
+    }
+
     @Override
     public boolean delete(WithId<T> entity) {
         return this.delete(entity.getId().get());
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.jsondb.impl;
+
+/**
+ * Declares a secondary index on a property of the entries of a collection.
+ * For example an index on collection {@code /integrations} and property {@code name}
+ * indexes the values stored at {@code /integrations/:<id>/name}.
+ */
+public final class Index {
+
+    private final String collectionDBPath;
+    private final String propertyDBPath;
+    private final String name;
+
+    private Index(String collectionPath, String property) {
+        this.collectionDBPath = JsonRecordSupport.convertToDBPath(collectionPath);
+        this.propertyDBPath = JsonRecordSupport.convertToDBPath(property);
+        this.name = collectionDBPath + "*" + propertyDBPath.substring(1);
+    }
+
+    public static Index of(String collectionPath, String property) {
+        return new Index(collectionPath, property);
+    }
+
+    /**
+     * @return the name of the index, the collection db path and the property db path
+     * joined by a {@code *} standing for the entry id.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the db path is the path of an indexed property value.
+     */
+    public boolean matches(String dbPath) {
+        int idStart = collectionDBPath.length();
+        if (!dbPath.startsWith(collectionDBPath) || dbPath.length() <= idStart || dbPath.charAt(idStart) != ':') {
+            return false;
+        }
+        int idEnd = dbPath.indexOf('/', idStart);
+        return idEnd > idStart + 1
+            && dbPath.length() == idEnd + propertyDBPath.length()
+            && dbPath.startsWith(propertyDBPath, idEnd);
+    }
+
+    /**
+     * @return the path of the entry holding an indexed db path, in the form
+     * of {@code /<collection>/:<id>}.
+     */
+    public String toEntryPath(String dbPath) {
+        return dbPath.substring(0, dbPath.length() - propertyDBPath.length());
+    }
+
+}
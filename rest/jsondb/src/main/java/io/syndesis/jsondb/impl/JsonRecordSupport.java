@@ -18,16 +18,13 @@ package io.syndesis.jsondb.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -52,7 +49,15 @@ import static com.fasterxml.jackson.core.JsonToken.VALUE_NULL;
 @SuppressWarnings({"PMD.GodClass", "PMD.CyclomaticComplexity", "PMD.ModifiedCyclomaticComplexity", "PMD.StdCyclomaticComplexity"})
 public final class JsonRecordSupport {
 
-    public static final Pattern INTEGER_PATTERN = Pattern.compile("^\\d+$");
+    // Array indexes are encoded for every element we read or write, so
+    // keep the encodings of the common small indexes around.
+    private static final String[] ARRAY_INDEX_PATHS = new String[1024];
+
+    static {
+        for (int i = 0; i < ARRAY_INDEX_PATHS.length; i++) {
+            ARRAY_INDEX_PATHS[i] = toLexSortableString(i, '[');
+        }
+    }
 
     /* default */ static class PathPart {
         private final String path;
@@ -89,6 +94,15 @@ public final class JsonRecordSupport {
         return new JsonRecordConsumer(dbPath, output, options);
     }
 
+    /**
+     * Like {@link #recordsToJsonStream(String, OutputStream, GetOptions)} but writes the json
+     * tokens to the supplied generator, which allows feeding them to a {@code TokenBuffer} so that
+     * they can be bound to objects without being serialized and parsed again.
+     */
+    public static Consumer<JsonRecord> recordsToJsonGenerator(String dbPath, JsonGenerator jg, GetOptions options) throws IOException {
+        return new JsonRecordConsumer(dbPath, jg, options);
+    }
+
     public static void jsonStreamToRecords(String dbPath, InputStream is, Consumer<JsonRecord> consumer) throws IOException {
         try (JsonParser jp = new JsonFactory().createParser(is)) {
             jsonStreamToRecords(jp, dbPath, consumer);
@@ -101,14 +115,52 @@ public final class JsonRecordSupport {
     }
 
     public static String convertToDBPath(String base) {
-        String value = Arrays.stream(base.split("/")).filter(x -> !x.isEmpty()).map(x ->
-            INTEGER_PATTERN.matcher(validateKey(x)).matches() ? toArrayIndexPath(Integer.parseInt(x)) : x
-        ).collect(Collectors.joining("/"));
-        return Strings.suffix(Strings.prefix(value, "/"), "/");
+        StringBuilder builder = new StringBuilder(base.length() + 2).append('/');
+        int end;
+        for (int start = 0; start < base.length(); start = end + 1) {
+            end = base.indexOf('/', start);
+            if (end < 0) {
+                end = base.length();
+            }
+            if (end == start) {
+                continue;
+            }
+
+            String key = validateKey(base.substring(start, end));
+            if (isInteger(key)) {
+                builder.append(toArrayIndexPath(Integer.parseInt(key)));
+            } else {
+                builder.append(key);
+            }
+            builder.append('/');
+        }
+        return builder.toString();
+    }
+
+    private static boolean isInteger(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return !value.isEmpty();
     }
 
     private static String validateKey(String key) {
-        if( key.chars().anyMatch(x -> { switch(x){
+        for (int i = 0; i < key.length(); i++) {
+            if (isInvalidKeyChar(key.charAt(i))) {
+                throw new JsonDBException("Invalid key. Cannot contain ., %, $, #, [, ], /, or ASCII control characters 0-31 or 127. Key: "+key);
+            }
+        }
+        if( key.length() > 768 ) {
+            throw new JsonDBException("Invalid key. Key cannot ben longer than 768 characters. Key: "+key);
+        }
+        return key;
+    }
+
+    private static boolean isInvalidKeyChar(char x) {
+        switch(x){
             case '.':
             case '%':
             case '$':
@@ -119,17 +171,8 @@ public final class JsonRecordSupport {
             case 127:
                 return true;
             default:
-                if( 0 < x &&  x < 32) {
-                    return true;
-                }
-                return false;
-        }})) {
-            throw new JsonDBException("Invalid key. Cannot contain ., %, $, #, [, ], /, or ASCII control characters 0-31 or 127. Key: "+key);
+                return 0 < x &&  x < 32;
         }
-        if( key.length() > 768 ) {
-            throw new JsonDBException("Invalid key. Key cannot ben longer than 768 characters. Key: "+key);
-        }
-        return key;
     }
 
     public static void jsonStreamToRecords(JsonParser jp, String path, Consumer<JsonRecord> consumer) throws IOException {
@@ -180,8 +223,9 @@ public final class JsonRecordSupport {
     }
 
     private static String toArrayIndexPath(int idx) {
-        // todo: encode the idx using something like http://www.zanopha.com/docs/elen.pdf
-        // so we get lexicographic ordering.
+        if (idx >= 0 && idx < ARRAY_INDEX_PATHS.length) {
+            return ARRAY_INDEX_PATHS[idx];
+        }
         return toLexSortableString(idx, '[');
     }
 
@@ -194,56 +238,68 @@ public final class JsonRecordSupport {
      * http://www.zanopha.com/docs/elen.pdf
      */
     /* default */ static String toLexSortableString(int value, char marker) {
-        ArrayList<String> seqs = new ArrayList<String>();
-
-        String seq = Integer.toString(value);
-        seqs.add(seq);
-        while (seq.length() > 1) {
-            seq = Integer.toString(seq.length());
-            seqs.add(seq);
-        }
-
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < seqs.size(); i++) {
+        // An int has at most 11 characters, so the value is prefixed
+        // by at most two levels of lengths.
+        String digits = Integer.toString(value);
+        int length = digits.length();
+        StringBuilder builder = new StringBuilder(length + 6);
+        if (length == 1) {
             builder.append(marker);
+        } else if (length < 10) {
+            builder.append(marker).append(marker).append(length);
+        } else {
+            builder.append(marker).append(marker).append(marker).append(2).append(length);
         }
-        for (int i = seqs.size() - 1; i >= 0; i--) {
-            builder.append(seqs.get(i));
-        }
-        return builder.toString();
+        return builder.append(digits).toString();
     }
 
     /* default */ static int fromLexSortableStringToInt(String value, char marker) {
-        // Trim the initial markers.
-        String remaining = value.replaceFirst("^" + Pattern.quote(String.valueOf(marker)) + "+", "");
+        // Skip the initial markers.
+        int pos = 0;
+        while (pos < value.length() && value.charAt(pos) == marker) {
+            pos++;
+        }
 
         int rc = 1;
-        while (!remaining.isEmpty()) {
-            String x = remaining.substring(0, rc);
-            remaining = remaining.substring(rc);
-            rc = Integer.parseInt(x);
+        while (pos < value.length()) {
+            int end = pos + rc;
+            rc = parseInt(value, pos, end);
+            pos = end;
         }
 
         return rc;
     }
 
+    private static int parseInt(String value, int start, int end) {
+        if (end > value.length()) {
+            throw new NumberFormatException("Invalid lexicographically sortable int: " + value);
+        }
+        boolean negative = value.charAt(start) == '-';
+        int rc = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid lexicographically sortable int: " + value);
+            }
+            rc = rc * 10 + digit;
+        }
+        return negative ? -rc : rc;
+    }
+
     /* default */ static class JsonRecordConsumer implements Consumer<JsonRecord> {
 
         private final String base;
         private final JsonGenerator jg;
         private final OutputStream output;
         private final GetOptions options;
-        private final LinkedList<PathPart> currentPath = new LinkedList<>();
+        private final List<PathPart> currentPath = new ArrayList<>();
+        private final List<String> newPath = new ArrayList<>();
         private final Set<String> shallowObjects = new LinkedHashSet<>();
 
         /* default */ JsonRecordConsumer(String base, OutputStream output, GetOptions options) throws IOException {
             this.base = base;
             this.output = output;
-            try {
-                this.options = options.clone();
-            } catch (CloneNotSupportedException e) {
-                throw new IOException(e);
-            }
+            this.options = cloneOptions(options);
 
             if( this.options.callback()!=null ) {
                 String backack = this.options.callback() + "(";
@@ -255,6 +311,24 @@ public final class JsonRecordSupport {
             }
         }
 
+        /* default */ JsonRecordConsumer(String base, JsonGenerator jg, GetOptions options) throws IOException {
+            this.base = base;
+            this.output = null;
+            this.options = cloneOptions(options);
+            if( this.options.callback()!=null ) {
+                throw new IOException("The callback option is not supported when writing to a JsonGenerator");
+            }
+            this.jg = jg;
+        }
+
+        private static GetOptions cloneOptions(GetOptions options) throws IOException {
+            try {
+                return options.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IOException(e);
+            }
+        }
+
         @Override
         public void accept(JsonRecord record) {
             try {
@@ -264,14 +338,17 @@ public final class JsonRecordSupport {
                     return;
                 }
 
+                // Split the part of the path below the base into its segments,
+                // reusing the list across records.
                 String path = record.getPath();
-                path = Strings.trimSuffix(path.substring(base.length()), "/");
-
-                // Lets see how much of the path we match compared to
-                // when we last got called.
-                List<String> newPath = new ArrayList<>(Arrays.asList(path.split("/")));
-                if (newPath.size() == 1 && newPath.get(0).isEmpty()) {
-                    newPath.clear();
+                newPath.clear();
+                int end;
+                for (int start = base.length(); start < path.length(); start = end + 1) {
+                    end = path.indexOf('/', start);
+                    if (end < 0) {
+                        end = path.length();
+                    }
+                    newPath.add(path.substring(start, end));
                 }
 
                 // should we skip over deep records?
@@ -280,6 +357,8 @@ public final class JsonRecordSupport {
                     return;
                 }
 
+                // Lets see how much of the path we match compared to
+                // when we last got called.
                 int pathMatches = getPathMatches(newPath);
 
                 // we might need to close objects down...
@@ -288,7 +367,7 @@ public final class JsonRecordSupport {
                 openUpStructs(newPath, pathMatches);
 
                 if (!currentPath.isEmpty() && jg.getOutputContext().inArray()) {
-                    PathPart pathPart = currentPath.getLast();
+                    PathPart pathPart = currentPath.get(currentPath.size() - 1);
                     String last = newPath.get(newPath.size() - 1);
                     int idx = toArrayIndex(last);
                     while (idx > pathPart.getIdx()) {
@@ -353,7 +432,7 @@ public final class JsonRecordSupport {
         private void closeDownStructs(int pathMatches) throws IOException {
             int count = currentPath.size() - pathMatches;
             for (int i = 0; i < count; i++) {
-                if (currentPath.removeLast().isArray()) {
+                if (currentPath.remove(currentPath.size() - 1).isArray()) {
                     jg.writeEndArray();
                 } else {
                     jg.writeEndObject();
@@ -397,6 +476,14 @@ public final class JsonRecordSupport {
             jg.close();
         }
 
+        private void writeInteger(String value) throws IOException {
+            if (value.length() < 19) {
+                jg.writeNumber(Long.parseLong(value));
+            } else {
+                jg.writeNumber(new BigInteger(value));
+            }
+        }
+
         private void writeValue(JsonRecord value) throws IOException {
             switch (value.getKind()) {
                 case JsonTokenId.ID_STRING:
@@ -406,9 +493,12 @@ public final class JsonRecordSupport {
                     jg.writeNull();
                     break;
                 case JsonTokenId.ID_NUMBER_FLOAT:
-                case JsonTokenId.ID_NUMBER_INT:
                     jg.writeNumber(value.getValue());
                     break;
+                case JsonTokenId.ID_NUMBER_INT:
+                    // Write integers as such so token buffers don't turn them into floats.
+                    writeInteger(value.getValue());
+                    break;
                 case JsonTokenId.ID_TRUE:
                     jg.writeBoolean(true);
                     break;
@@ -18,22 +18,34 @@ package io.syndesis.jsondb.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import io.syndesis.core.EventBus;
 import io.syndesis.core.KeyGenerator;
@@ -41,13 +53,17 @@ import io.syndesis.jsondb.GetOptions;
 import io.syndesis.jsondb.JsonDB;
 import io.syndesis.jsondb.JsonDBException;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.util.IntegerColumnMapper;
+import org.skife.jdbi.v2.util.LongColumnMapper;
 import org.skife.jdbi.v2.util.StringColumnMapper;
 
 /**
@@ -65,13 +81,19 @@ public class SqlJsonDB implements JsonDB {
 
     private final DBI dbi;
     private final EventBus bus;
+    private final List<Index> indexes;
 
     // These values are used to compute a seq key
     private DatabaseKind databaseKind = DatabaseKind.PostgreSQL;
 
     public SqlJsonDB(DBI dbi, EventBus bus) {
+        this(dbi, bus, Collections.emptyList());
+    }
+
+    public SqlJsonDB(DBI dbi, EventBus bus, Collection<Index> indexes) {
         this.dbi = dbi;
         this.bus = bus;
+        this.indexes = new ArrayList<>(indexes);
 
 
         // Lets find out the type of DB we are working with.
@@ -97,14 +119,21 @@ public class SqlJsonDB implements JsonDB {
         withTransaction(dbi -> {
             if(databaseKind == DatabaseKind.PostgreSQL) {
                 dbi.update("CREATE TABLE jsondb (path VARCHAR COLLATE \"C\" PRIMARY KEY, value VARCHAR, kind INT)");
+                dbi.update("CREATE TABLE jsondb_index (path VARCHAR COLLATE \"C\" PRIMARY KEY, idx VARCHAR, value VARCHAR)");
+                dbi.update("CREATE TABLE jsondb_version (path VARCHAR COLLATE \"C\" PRIMARY KEY, version BIGINT)");
             } else {
                 dbi.update("CREATE TABLE jsondb (path VARCHAR PRIMARY KEY, value VARCHAR, kind INT)");
+                dbi.update("CREATE TABLE jsondb_index (path VARCHAR PRIMARY KEY, idx VARCHAR, value VARCHAR)");
+                dbi.update("CREATE TABLE jsondb_version (path VARCHAR PRIMARY KEY, version BIGINT)");
             }
+            dbi.update("CREATE INDEX jsondb_index_idx_value ON jsondb_index (idx, value)");
         });
     }
 
     public void dropTables() {
         withTransaction(dbi -> {
+            dbi.update("DROP TABLE IF EXISTS jsondb_version");
+            dbi.update("DROP TABLE IF EXISTS jsondb_index");
             dbi.update("DROP TABLE jsondb");
         });
     }
@@ -126,15 +155,15 @@ public class SqlJsonDB implements JsonDB {
 
         // Lets normalize the path a bit
         String baseDBPath = JsonRecordSupport.convertToDBPath(path);
-        String like = baseDBPath + "%";
 
         Consumer<OutputStream> result = null;
         final Handle h = dbi.open();
         try {
             // Creating the iterator could fail with a runtime exception,
-            String sql = "select path,value,kind from jsondb where path LIKE :like order by path";
+            String sql = "select path,value,kind from jsondb where path >= :from and path < :to order by path";
             ResultIterator<JsonRecord> iterator = h.createQuery(sql)
-                .bind("like", like)
+                .bind("from", baseDBPath)
+                .bind("to", upperBound(baseDBPath))
                 .map(JsonRecordMapper.INSTANCE)
                 .iterator();
             try {
@@ -168,13 +197,89 @@ public class SqlJsonDB implements JsonDB {
         return result;
     }
 
+    @Override
+    public Stream<JsonParser> getChildrenAsParsers(String path) {
+        String baseDBPath = JsonRecordSupport.convertToDBPath(path);
+
+        final Handle h = dbi.open();
+        try {
+            // Only select the records below the path, the record at the path itself is not a child.
+            String sql = "select path,value,kind from jsondb where path > :from and path < :to order by path";
+            ResultIterator<JsonRecord> iterator = h.createQuery(sql)
+                .bind("from", baseDBPath)
+                .bind("to", upperBound(baseDBPath))
+                .map(JsonRecordMapper.INSTANCE)
+                .iterator();
+
+            ChildParserIterator children = new ChildParserIterator(baseDBPath, iterator);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(children, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.close();
+                    h.close();
+                });
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+            h.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Groups the records of the children of a path and converts each group
+     * into a token buffer holding the json of that child.
+     */
+    private static class ChildParserIterator implements Iterator<JsonParser> {
+        private final String baseDBPath;
+        private final Iterator<JsonRecord> records;
+        private JsonRecord pending;
+
+        /* default */ ChildParserIterator(String baseDBPath, Iterator<JsonRecord> records) {
+            this.baseDBPath = baseDBPath;
+            this.records = records;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null || records.hasNext();
+        }
+
+        @Override
+        public JsonParser next() {
+            JsonRecord record = pending;
+            if (record == null) {
+                record = records.next();
+            }
+            pending = null;
+
+            String childDBPath = record.getPath().substring(0, record.getPath().indexOf('/', baseDBPath.length()) + 1);
+            TokenBuffer buffer = new TokenBuffer(null, false);
+            try {
+                Consumer<JsonRecord> toJson = JsonRecordSupport.recordsToJsonGenerator(childDBPath, buffer, new GetOptions());
+                toJson.accept(record);
+                while (records.hasNext()) {
+                    record = records.next();
+                    if (!record.getPath().startsWith(childDBPath)) {
+                        pending = record;
+                        break;
+                    }
+                    toJson.accept(record);
+                }
+                toJson.accept(null);
+            } catch (IOException e) {
+                throw new JsonDBException(e);
+            }
+            return buffer.asParser();
+        }
+    }
+
     @Override
     public boolean delete(String path) {
         String baseDBPath = JsonRecordSupport.convertToDBPath(path);
-        String like = baseDBPath+"%";
         boolean rc[] = new boolean[]{false};
         withTransaction(dbi -> {
-            rc[0] = deleteJsonRecords(dbi, baseDBPath, like) > 0;
+            rc[0] = deleteJsonRecords(dbi, baseDBPath) > 0;
+            if (rc[0]) {
+                bumpVersion(dbi, baseDBPath);
+            }
         });
         if( bus!=null && rc[0] ) {
             bus.broadcast("jsondb-deleted", Strings.prefix(Strings.trimSuffix(path, "/"), "/"));
@@ -185,39 +290,141 @@ public class SqlJsonDB implements JsonDB {
     @Override
     public boolean exists(String path) {
         String baseDBPath = JsonRecordSupport.convertToDBPath(path);
-        String like = baseDBPath+"%";
         boolean rc[] = new boolean[]{false};
         withTransaction(dbi -> {
-            rc[0] = countJsonRecords(dbi, like) > 0;
+            rc[0] = countJsonRecords(dbi, baseDBPath) > 0;
         });
         return rc[0];
     }
 
     @Override
-    public Set<String> fetchIdsByPropertyValue(final String collectionPath, final String property, final String value) {
-        final String pathRegex = collectionPath + "/:[^/]+/" + property;
-
-        final AtomicReference<Set<String>> ret = new AtomicReference<>();
+    public String getVersion(String path) {
+        String topLevelDBPath = topLevelDBPath(JsonRecordSupport.convertToDBPath(path));
+        final AtomicReference<String> ret = new AtomicReference<>();
         withTransaction(dbi -> {
-            final String query;
-            if (databaseKind == DatabaseKind.PostgreSQL) {
-                query = "SELECT regexp_replace(path, '(/.+/:[^/]+).*', '\\1') from jsondb where path ~ ? and value = ?";
-            } else if (databaseKind == DatabaseKind.H2) {
-                query = "SELECT regexp_replace(path, '(/.+/:[^/]+).*', '$1') from jsondb where path regexp ? and value = ?";
+            if ("/".equals(topLevelDBPath)) {
+                // Every write bumps one of the versions so their sum changes with any change.
+                Long sum = dbi.createQuery("SELECT COALESCE(SUM(version), 0) from jsondb_version")
+                    .map(LongColumnMapper.PRIMITIVE).first();
+                ret.set(Long.toString(sum));
             } else {
-                throw new UnsupportedOperationException(
-                    "Don't know how to use regex in a query with database: " + databaseKind);
+                // Writes to the root replace the top level paths too.
+                ret.set(readVersion(dbi, "/") + "." + readVersion(dbi, topLevelDBPath));
             }
+        });
+        return ret.get();
+    }
+
+    private static long readVersion(Handle dbi, String topLevelDBPath) {
+        Long version = dbi.createQuery("SELECT version from jsondb_version where path = ?")
+            .bind(0, topLevelDBPath)
+            .map(LongColumnMapper.PRIMITIVE).first();
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Increments the version of the top level path holding the db path.  The
+     * upsert locks the version row so concurrent writers are serialized and
+     * each of them gets a distinct version, including the first writers of a
+     * new top level path.
+     */
+    private void bumpVersion(Handle dbi, String baseDBPath) {
+        String topLevelDBPath = topLevelDBPath(baseDBPath);
+        if (databaseKind == DatabaseKind.PostgreSQL || databaseKind == DatabaseKind.CockroachDB) {
+            dbi.update("INSERT into jsondb_version (path, version) values (?, 1) " +
+                "ON CONFLICT (path) DO UPDATE SET version = jsondb_version.version + 1", topLevelDBPath);
+        } else if (databaseKind == DatabaseKind.SQLite) {
+            dbi.update("INSERT OR IGNORE into jsondb_version (path, version) values (?, 0)", topLevelDBPath);
+            dbi.update("UPDATE jsondb_version SET version = version + 1 where path = ?", topLevelDBPath);
+        } else {
+            int updated = dbi.update("UPDATE jsondb_version SET version = version + 1 where path = ?", topLevelDBPath);
+            if (updated == 0) {
+                try {
+                    dbi.update("INSERT into jsondb_version (path, version) values (?, 1)", topLevelDBPath);
+                } catch (UnableToExecuteStatementException e) {
+                    if (!isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    // Inserted by a concurrent writer in the meantime, H2 keeps the transaction usable
+                    dbi.update("UPDATE jsondb_version SET version = version + 1 where path = ?", topLevelDBPath);
+                }
+            }
+        }
+    }
+
+    private static boolean isDuplicateKey(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                // Class 23: integrity constraint violation
+                return state != null && state.startsWith("23");
+            }
+        }
+        return false;
+    }
 
-            final List<String> paths = dbi.createQuery(query).bind(0, pathRegex).bind(1, value)
+    /**
+     * @return the db path of the top level object holding the db path, for
+     * example {@code /integrations/} for {@code /integrations/:1/name/}, or
+     * {@code /} for the root itself.
+     */
+    /* default */ static String topLevelDBPath(String baseDBPath) {
+        int end = baseDBPath.indexOf('/', 1);
+        if (end < 0) {
+            return "/";
+        }
+        return baseDBPath.substring(0, end + 1);
+    }
+
+    @Override
+    public Set<String> fetchIdsByPropertyValue(final String collectionPath, final String property, final String value) {
+        final Index index = findIndex(Index.of(collectionPath, property).getName());
+        if (index != null) {
+            final AtomicReference<Set<String>> ret = new AtomicReference<>();
+            withTransaction(dbi -> {
+                final List<String> paths = dbi.createQuery("SELECT path from jsondb_index where idx = ? and value = ?")
+                    .bind(0, index.getName()).bind(1, value)
+                    .map(StringColumnMapper.INSTANCE).list();
+
+                ret.set(paths.stream().map(index::toEntryPath).collect(Collectors.toSet()));
+            });
+            return ret.get();
+        }
+
+        // Without an index, scans the values stored under the entries of the collection
+        final Index scan = Index.of(collectionPath, property);
+        final String entriesDBPath = JsonRecordSupport.convertToDBPath(collectionPath) + ":";
+
+        final AtomicReference<Set<String>> ret = new AtomicReference<>();
+        withTransaction(dbi -> {
+            final List<String> paths = dbi.createQuery("SELECT path from jsondb where path >= ? and path < ? and value = ?")
+                .bind(0, entriesDBPath).bind(1, upperBound(entriesDBPath)).bind(2, value)
                 .map(StringColumnMapper.INSTANCE).list();
 
-            ret.set(new HashSet<>(paths));
+            ret.set(paths.stream().filter(scan::matches).map(scan::toEntryPath).collect(Collectors.toSet()));
         });
 
         return ret.get();
     }
 
+    private Index findIndex(String name) {
+        for (Index index : indexes) {
+            if (index.getName().equals(name)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private Index findIndexMatching(String dbPath) {
+        for (Index index : indexes) {
+            if (index.matches(dbPath)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String push(String path, InputStream body) {
         String key = createKey();
@@ -225,37 +432,134 @@ public class SqlJsonDB implements JsonDB {
         return key;
     }
 
-    /* default */ class BatchManager {
+    /**
+     * Writes the records of set/update operations.  On PostgreSQL the records are
+     * streamed to the server with {@code COPY jsondb FROM STDIN}, other databases
+     * use JDBC insert batches.
+     */
+    /* default */ class BatchManager implements AutoCloseable {
 
         private final Handle dbi;
+        private final boolean copy;
         private long batchSize;
         private PreparedBatch insertBatch;
+        private PreparedBatch indexBatch;
+        private int indexBatchSize;
+        private CopyIn copyIn;
+        private final StringBuilder copyBuffer = new StringBuilder();
 
         /* default */ BatchManager(Handle dbi) {
             this.dbi = dbi;
+            this.copy = databaseKind == DatabaseKind.PostgreSQL;
         }
 
         public void deleteRecordsForSet(String baseDBPath) {
-            String like = baseDBPath + "%";
-            deleteJsonRecords(dbi, baseDBPath, like);
+            // No other statements can be run while a COPY is in progress.
+            endCopy();
+            deleteJsonRecords(dbi, baseDBPath);
         }
 
         public Consumer<JsonRecord> createSetConsumer() {
             return r -> {
-                PreparedBatch insert = getInsertBatch();
-                insert.bind("path", r.getPath())
-                    .bind("value", r.getValue())
-                    .bind("kind", r.getKind())
-                    .add();
-
-                batchSize += r.getPath().length() + r.getValue().length();
-                if (batchSize > 512 * 1024) { // Write the batch once we have enough data.
-                    insert.execute();
-                    batchSize = 0;
+                Index index = findIndexMatching(r.getPath());
+                if (index != null) {
+                    getIndexBatch().bind("path", r.getPath())
+                        .bind("idx", index.getName())
+                        .bind("value", r.getValue())
+                        .add();
+                    indexBatchSize++;
+                }
+
+                if (copy) {
+                    copyRecord(r);
+                } else {
+                    insertRecord(r);
                 }
             };
         }
 
+        private void insertRecord(JsonRecord r) {
+            PreparedBatch insert = getInsertBatch();
+            insert.bind("path", r.getPath())
+                .bind("value", r.getValue())
+                .bind("kind", r.getKind())
+                .add();
+
+            batchSize += r.getPath().length() + r.getValue().length();
+            if (batchSize > 512 * 1024) { // Write the batch once we have enough data.
+                insert.execute();
+                batchSize = 0;
+                flushIndex();
+            }
+        }
+
+        private void copyRecord(JsonRecord r) {
+            appendCopyValue(r.getPath());
+            copyBuffer.append('\t');
+            appendCopyValue(r.getValue());
+            copyBuffer.append('\t').append(r.getKind()).append('\n');
+
+            if (copyBuffer.length() > 64 * 1024) { // Send the rows once we have enough data.
+                writeCopyBuffer();
+            }
+        }
+
+        /**
+         * Escapes the value as required by the text format of COPY.
+         */
+        private void appendCopyValue(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        copyBuffer.append("\\\\");
+                        break;
+                    case '\n':
+                        copyBuffer.append("\\n");
+                        break;
+                    case '\r':
+                        copyBuffer.append("\\r");
+                        break;
+                    case '\t':
+                        copyBuffer.append("\\t");
+                        break;
+                    default:
+                        copyBuffer.append(c);
+                }
+            }
+        }
+
+        private void writeCopyBuffer() {
+            try {
+                if (copyIn == null) {
+                    copyIn = getPostgresConnection(dbi.getConnection()).getCopyAPI()
+                        .copyIn("COPY jsondb (path, value, kind) FROM STDIN");
+                }
+                byte[] data = copyBuffer.toString().getBytes(StandardCharsets.UTF_8);
+                copyIn.writeToCopy(data, 0, data.length);
+                copyBuffer.setLength(0);
+            } catch (SQLException e) {
+                throw new JsonDBException(e);
+            }
+        }
+
+        private void endCopy() {
+            if (copyBuffer.length() > 0) {
+                writeCopyBuffer();
+            }
+            if (copyIn != null) {
+                try {
+                    copyIn.endCopy();
+                } catch (SQLException e) {
+                    throw new JsonDBException(e);
+                } finally {
+                    copyIn = null;
+                }
+                // The index rows could not be written while the COPY was in progress.
+                flushIndex();
+            }
+        }
+
         public PreparedBatch getInsertBatch() {
             if (insertBatch == null) {
                 insertBatch = dbi.prepareBatch("INSERT into jsondb (path, value, kind) values (:path, :value, :kind)");
@@ -263,38 +567,138 @@ public class SqlJsonDB implements JsonDB {
             return insertBatch;
         }
 
+        public PreparedBatch getIndexBatch() {
+            if (indexBatch == null) {
+                indexBatch = dbi.prepareBatch("INSERT into jsondb_index (path, idx, value) values (:path, :idx, :value)");
+            }
+            return indexBatch;
+        }
+
         public void flush() {
-            if (batchSize > 0 && insertBatch != null) {
+            if (copy) {
+                endCopy();
+            } else if (batchSize > 0 && insertBatch != null) {
                 insertBatch.execute();
 
             }
+            flushIndex();
+        }
+
+        private void flushIndex() {
+            if (indexBatchSize > 0) {
+                indexBatch.execute();
+                indexBatchSize = 0;
+            }
+        }
+
+        /**
+         * Aborts a COPY left in progress by a failure so that the transaction can be rolled back.
+         */
+        @Override
+        @SuppressWarnings("PMD.EmptyCatchBlock")
+        public void close() {
+            if (copyIn != null) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException ignore) {
+                    // the transaction is rolled back anyways
+                } finally {
+                    copyIn = null;
+                }
+            }
+        }
+    }
+
+    private static PGConnection getPostgresConnection(Connection conn) throws SQLException {
+        if (conn instanceof PGConnection) {
+            return PGConnection.class.cast(conn);
         }
+        return conn.unwrap(PGConnection.class);
     }
 
     @Override
     public void set(String path, InputStream body) {
         withTransaction(dbi -> {
-            BatchManager mb = new BatchManager(dbi);
-            String baseDBPath = JsonRecordSupport.convertToDBPath(path);
-            mb.deleteRecordsForSet(baseDBPath);
-            try {
+            try (BatchManager mb = new BatchManager(dbi)) {
+                String baseDBPath = JsonRecordSupport.convertToDBPath(path);
+                mb.deleteRecordsForSet(baseDBPath);
                 JsonRecordSupport.jsonStreamToRecords(baseDBPath, body, mb.createSetConsumer());
+                mb.flush();
+                bumpVersion(dbi, baseDBPath);
             } catch (IOException e) {
                 throw new JsonDBException(e);
             }
-            mb.flush();
         });
         if( bus!=null ) {
             bus.broadcast("jsondb-updated", Strings.prefix(Strings.trimSuffix(path, "/"), "/"));
         }
     }
 
+    @Override
+    public void setAll(Map<String, InputStream> bodies) {
+        // Sorting the paths puts nested paths right after their parent.
+        TreeMap<String, InputStream> dbPaths = new TreeMap<>();
+        for (Map.Entry<String, InputStream> entry : bodies.entrySet()) {
+            dbPaths.put(JsonRecordSupport.convertToDBPath(entry.getKey()), entry.getValue());
+        }
+        String previous = null;
+        for (String dbPath : dbPaths.keySet()) {
+            if (previous != null && dbPath.startsWith(previous)) {
+                throw new JsonDBException("Cannot set nested paths in a single batch: " + previous + " and " + dbPath);
+            }
+            previous = dbPath;
+        }
+
+        withTransaction(dbi -> {
+            // Delete all the previous values first so that all the
+            // records can be written using a single insert batch.
+            try (BatchManager mb = new BatchManager(dbi)) {
+                for (String dbPath : dbPaths.keySet()) {
+                    mb.deleteRecordsForSet(dbPath);
+                }
+                Consumer<JsonRecord> consumer = mb.createSetConsumer();
+                for (Map.Entry<String, InputStream> entry : dbPaths.entrySet()) {
+                    JsonRecordSupport.jsonStreamToRecords(entry.getKey(), entry.getValue(), consumer);
+                }
+                mb.flush();
+                Set<String> topLevelDBPaths = dbPaths.keySet().stream()
+                    .map(SqlJsonDB::topLevelDBPath)
+                    .collect(Collectors.toCollection(TreeSet::new));
+                for (String topLevelDBPath : topLevelDBPaths) {
+                    bumpVersion(dbi, topLevelDBPath);
+                }
+            } catch (IOException e) {
+                throw new JsonDBException(e);
+            }
+        });
+        if( bus!=null ) {
+            for (String path : coalesceEventPaths(bodies.keySet())) {
+                bus.broadcast("jsondb-updated", path);
+            }
+        }
+    }
+
+    /**
+     * Reduces the paths changed by a batch to a single event path per top level
+     * object, so a batch over a collection results in a single event for the collection.
+     */
+    private static Set<String> coalesceEventPaths(Set<String> paths) {
+        Map<String, String> byTopLevel = new TreeMap<>();
+        for (String path : paths) {
+            String eventPath = Strings.prefix(Strings.trimSuffix(path, "/"), "/");
+            int end = eventPath.indexOf('/', 1);
+            String topLevel = end < 0 ? eventPath : eventPath.substring(0, end);
+            byTopLevel.merge(topLevel, eventPath, (a, b) -> a.equals(b) ? a : topLevel);
+        }
+        return new TreeSet<>(byTopLevel.values());
+    }
+
     @Override
     public void update(String path, InputStream is) {
         ArrayList<String> updatePaths = new ArrayList<>();
+        Set<String> topLevelDBPaths = new TreeSet<>();
         withTransaction(dbi -> {
-            try {
-                BatchManager mb = new BatchManager(dbi);
+            try (BatchManager mb = new BatchManager(dbi)) {
 
                 try (JsonParser jp = new JsonFactory().createParser(is)) {
                     JsonToken nextToken = jp.nextToken();
@@ -315,6 +719,7 @@ public class SqlJsonDB implements JsonDB {
                         String key = Strings.suffix(path, "/")+jp.getCurrentName();
                         updatePaths.add(key);
                         String baseDBPath = JsonRecordSupport.convertToDBPath(key);
+                        topLevelDBPaths.add(topLevelDBPath(baseDBPath));
                         mb.deleteRecordsForSet(baseDBPath);
 
                         try {
@@ -329,6 +734,9 @@ public class SqlJsonDB implements JsonDB {
                         throw new JsonParseException(jp, "Document did not terminate as expected.");
                     }
                     mb.flush();
+                    for (String topLevelDBPath : topLevelDBPaths) {
+                        bumpVersion(dbi, topLevelDBPath);
+                    }
                 }
             } catch (IOException e) {
                 throw new JsonDBException(e);
@@ -343,21 +751,42 @@ public class SqlJsonDB implements JsonDB {
     }
 
 
-    private int deleteJsonRecords(Handle dbi, String baseDBPath, String like) {
+    private int deleteJsonRecords(Handle dbi, String baseDBPath) {
+        if (!indexes.isEmpty()) {
+            deleteRecords(dbi, "jsondb_index", baseDBPath);
+        }
+        return deleteRecords(dbi, "jsondb", baseDBPath);
+    }
+
+    private static int deleteRecords(Handle dbi, String table, String baseDBPath) {
 
         LinkedList<String> params = getAllParentPaths(baseDBPath);
 
-        StringBuilder sql = new StringBuilder("DELETE from jsondb where path LIKE ?");
+        StringBuilder sql = new StringBuilder("DELETE from ").append(table).append(" where (path >= ? and path < ?)");
         if( !params.isEmpty() ) {
             sql.append(" OR path in ( ")
                .append(String.join(", ", Collections.nCopies(params.size(), "?")))
                .append(" )");
         }
 
-        params.addFirst(like);
+        params.addFirst(upperBound(baseDBPath));
+        params.addFirst(baseDBPath);
         return dbi.update(sql.toString(), params.toArray());
     }
 
+    /**
+     * Computes the exclusive upper bound of the key range that holds all the
+     * records stored under the given db path.  Used instead of a {@code LIKE 'prefix%'}
+     * so that every {@link DatabaseKind} can answer the query with a range scan
+     * over the primary key: PostgreSQL and CockroachDB (the path column uses
+     * the "C" collation), H2 and SQLite all compare the path column in binary
+     * order.  It also keeps a '_' in a key from being treated as a wildcard.
+     */
+    /* default */ static String upperBound(String baseDBPath) {
+        int last = baseDBPath.length() - 1;
+        return baseDBPath.substring(0, last) + (char) (baseDBPath.charAt(last) + 1);
+    }
+
     private static LinkedList<String> getAllParentPaths(String baseDBPath) {
         LinkedList<String> params = new LinkedList<String>();
         Pattern compile = Pattern.compile("/[^/]*$");
@@ -372,9 +801,10 @@ public class SqlJsonDB implements JsonDB {
         return  params;
     }
 
-    private int countJsonRecords(Handle dbi, String like) {
-        Integer result = dbi.createQuery("SELECT COUNT(*) from jsondb where path LIKE ?")
-            .bind(0, like)
+    private int countJsonRecords(Handle dbi, String baseDBPath) {
+        Integer result = dbi.createQuery("SELECT COUNT(*) from jsondb where path >= ? and path < ?")
+            .bind(0, baseDBPath)
+            .bind(1, upperBound(baseDBPath))
             .map(IntegerColumnMapper.PRIMITIVE).first();
         return result.intValue();
     }
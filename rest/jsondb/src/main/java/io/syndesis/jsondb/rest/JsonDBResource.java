@@ -18,6 +18,7 @@ package io.syndesis.jsondb.rest;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 import javax.ws.rs.Consumes;
@@ -29,6 +30,9 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
@@ -63,7 +67,8 @@ public class JsonDBResource {
         @PathParam("path") String path,
         @QueryParam("print") String print,
         @QueryParam("shallow") Boolean shallow,
-        @QueryParam("callback") String callback
+        @QueryParam("callback") String callback,
+        @Context Request request
     ) {
         GetOptions options = new GetOptions();
         if ("pretty".equals(print)) {
@@ -85,13 +90,23 @@ public class JsonDBResource {
             options.callback(callback);
         }
 
+        // Read the version before the data, so a concurrent change can only
+        // make the tag older than the data and never hide that change.
+        EntityTag tag = new EntityTag(jsondb.getVersion(path) + "-" + Integer.toHexString(Objects.hash(print, shallow, callback)));
+        if( request!=null ) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+            if( notModified!=null ) {
+                return notModified.tag(tag).build();
+            }
+        }
+
         Consumer<OutputStream> stream = jsondb.getAsStreamingOutput(path, options);
         if( stream == null ) {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
 
         StreamingOutput streamingOutput = x-> stream.accept(x);
-        return Response.ok(streamingOutput).header(CONTENT_TYPE, contentType).build();
+        return Response.ok(streamingOutput).header(CONTENT_TYPE, contentType).tag(tag).build();
     }
 
     @Path("/{path: .*}.json")
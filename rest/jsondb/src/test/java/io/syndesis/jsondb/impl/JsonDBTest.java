@@ -16,6 +16,7 @@
 package io.syndesis.jsondb.impl;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,8 +27,10 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -346,6 +349,101 @@ public class JsonDBTest {
 
     }
 
+    @Test
+    public void testSetAll() throws IOException {
+        jsondb.set("/test/:1", mapper.writeValueAsString(map("name", "Joe", "city", "Tampa")));
+
+        Map<String, InputStream> bodies = new LinkedHashMap<>();
+        bodies.put("/test/:1", new ByteArrayInputStream(mapper.writeValueAsBytes(map("name", "Ana"))));
+        bodies.put("/test/:2", new ByteArrayInputStream(mapper.writeValueAsBytes(map("name", "Bob"))));
+        bodies.put("/other", new ByteArrayInputStream(mapper.writeValueAsBytes("value")));
+        jsondb.setAll(bodies);
+
+        assertThat(jsondb.getAsString("/test")).isEqualTo("{\":1\":{\"name\":\"Ana\"},\":2\":{\"name\":\"Bob\"}}");
+        assertThat(jsondb.getAsString("/other")).isEqualTo("\"value\"");
+
+        bodies.clear();
+        bodies.put("/test", new ByteArrayInputStream(mapper.writeValueAsBytes(map("name", "Ana"))));
+        bodies.put("/test/:2", new ByteArrayInputStream(mapper.writeValueAsBytes(map("name", "Bob"))));
+        try {
+            jsondb.setAll(bodies);
+            fail("Expected JsonDBException");
+        } catch (JsonDBException e) {
+            assertThat(e.getMessage()).startsWith("Cannot set nested paths");
+        }
+    }
+
+    @Test
+    public void testGetVersion() throws IOException {
+        String initial = jsondb.getVersion("/test");
+        String initialRoot = jsondb.getVersion("/");
+
+        jsondb.set("/test/:1", mapper.writeValueAsString(map("name", "Joe")));
+        String afterSet = jsondb.getVersion("/test/:1/name");
+        assertThat(afterSet).isNotEqualTo(initial);
+        assertThat(jsondb.getVersion("/test")).isEqualTo(afterSet);
+
+        jsondb.set("/other", mapper.writeValueAsString("value"));
+        assertThat(jsondb.getVersion("/test")).isEqualTo(afterSet);
+        assertThat(jsondb.getVersion("/")).isNotEqualTo(initialRoot);
+
+        jsondb.update("/test/:1", mapper.writeValueAsString(map("city", "Tampa")));
+        String afterUpdate = jsondb.getVersion("/test");
+        assertThat(afterUpdate).isNotEqualTo(afterSet);
+
+        assertThat(jsondb.delete("/test/:2")).isFalse();
+        assertThat(jsondb.getVersion("/test")).isEqualTo(afterUpdate);
+        assertThat(jsondb.delete("/test/:1")).isTrue();
+        assertThat(jsondb.getVersion("/test")).isNotEqualTo(afterUpdate);
+
+        String beforeRootSet = jsondb.getVersion("/other");
+        jsondb.set("/", mapper.writeValueAsString(map("test", "value")));
+        assertThat(jsondb.getVersion("/other")).isNotEqualTo(beforeRootSet);
+    }
+
+    @Test
+    public void testGetChildrenAsParsers() throws IOException {
+        jsondb.set("/test/:1", mapper.writeValueAsString(map("name", "Joe", "age", 25, "tags", new Object[]{"a", "b"})));
+        jsondb.set("/test/:2", mapper.writeValueAsString(map("name", "Ana", "props", map("city", "Tampa"))));
+        jsondb.set("/test/:3", mapper.writeValueAsString("scalar"));
+        jsondb.set("/testing/:4", mapper.writeValueAsString(map("name", "Bob")));
+
+        List<Object> children = new ArrayList<>();
+        try (Stream<JsonParser> parsers = jsondb.getChildrenAsParsers("/test")) {
+            parsers.forEach(parser -> {
+                try {
+                    children.add(mapper.readValue(parser, Object.class));
+                } catch (IOException e) {
+                    throw new JsonDBException(e);
+                }
+            });
+        }
+
+        assertThat(children).hasSize(3);
+        assertThat(children.get(0)).isEqualTo(map("name", "Joe", "age", 25, "tags", Arrays.asList("a", "b")));
+        assertThat(children.get(1)).isEqualTo(map("name", "Ana", "props", map("city", "Tampa")));
+        assertThat(children.get(2)).isEqualTo("scalar");
+
+        try (Stream<JsonParser> parsers = jsondb.getChildrenAsParsers("/missing")) {
+            assertThat(parsers.count()).isZero();
+        }
+    }
+
+    @Test
+    public void testPrefixRangeDoesNotMatchSiblings() throws IOException {
+        jsondb.set("/test_1", mapper.writeValueAsString(map("name", "Joe")));
+        jsondb.set("/testA1", mapper.writeValueAsString(map("name", "Ana")));
+        jsondb.set("/test_10", mapper.writeValueAsString(map("name", "Bob")));
+
+        assertThat(jsondb.getAsString("/test_1")).isEqualTo("{\"name\":\"Joe\"}");
+        assertThat(jsondb.exists("/test_")).isFalse();
+
+        assertThat(jsondb.delete("/test_1")).isTrue();
+        assertThat(jsondb.exists("/test_1")).isFalse();
+        assertThat(jsondb.exists("/testA1")).isTrue();
+        assertThat(jsondb.exists("/test_10")).isTrue();
+    }
+
     @Test
     public void shouldAscertainPropertyPairExistence() {
         jsondb.set("/pair/:id", "{\"key\": \"value\"}");
@@ -354,6 +452,40 @@ public class JsonDBTest {
         assertThat(jsondb.fetchIdsByPropertyValue("/pair", "key", "nope")).isEmpty();
     }
 
+    @Test
+    public void shouldFetchIdsByPropertyValueWithoutIndex() {
+        jsondb.set("/pair/:id1", "{\"key\": \"value\", \"nested\": {\"key\": \"other\"}}");
+        jsondb.set("/pair/:id2", "{\"key\": \"other\", \"nested\": {\"key\": \"value\"}}");
+        jsondb.set("/pairs/:id3", "{\"key\": \"value\"}");
+
+        assertThat(jsondb.fetchIdsByPropertyValue("/pair", "key", "value")).containsOnly("/pair/:id1");
+        assertThat(jsondb.fetchIdsByPropertyValue("/pair", "nested/key", "value")).containsOnly("/pair/:id2");
+        assertThat(jsondb.fetchIdsByPropertyValue("/pairs", "key", "value")).containsOnly("/pairs/:id3");
+    }
+
+    @Test
+    public void shouldFetchIdsByPropertyValueUsingIndex() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        SqlJsonDB indexed = new SqlJsonDB(new DBI(ds), null, Arrays.asList(Index.of("/pair", "key"), Index.of("/pair", "nested/key")));
+
+        indexed.set("/pair/:id1", "{\"key\": \"value\", \"nested\": {\"key\": \"other\"}}");
+        indexed.set("/pair/:id2", "{\"key\": \"value\", \"nested\": {\"key\": \"value\"}}");
+        indexed.set("/other/:id3", "{\"key\": \"value\"}");
+
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "key", "value")).containsOnly("/pair/:id1", "/pair/:id2");
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "nested/key", "value")).containsOnly("/pair/:id2");
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "key", "nope")).isEmpty();
+
+        indexed.update("/pair/:id1", "{\"key\": \"changed\"}");
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "key", "value")).containsOnly("/pair/:id2");
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "key", "changed")).containsOnly("/pair/:id1");
+
+        indexed.delete("/pair/:id2");
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "key", "value")).isEmpty();
+        assertThat(indexed.fetchIdsByPropertyValue("/pair", "nested/key", "value")).isEmpty();
+    }
+
     private String load(String file) throws IOException {
         try (InputStream is = getClass().getClassLoader().getResourceAsStream(file)) {
             ByteArrayOutputStream os = new ByteArrayOutputStream();
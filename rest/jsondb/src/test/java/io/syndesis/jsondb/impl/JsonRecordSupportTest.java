@@ -46,4 +46,25 @@ public class JsonRecordSupportTest {
             assertThat(r2).isEqualTo(i);
         }
     }
+
+    @Test
+    public void testLexSortableOrdering() {
+        String previous = JsonRecordSupport.toLexSortableString(0, '[');
+        for (int i = 1; i < 100_000; i++) {
+            String current = JsonRecordSupport.toLexSortableString(i, '[');
+            assertThat(current).isGreaterThan(previous);
+            assertThat(JsonRecordSupport.fromLexSortableStringToInt(current, '[')).isEqualTo(i);
+            previous = current;
+        }
+        assertThat(JsonRecordSupport.fromLexSortableStringToInt(
+            JsonRecordSupport.toLexSortableString(Integer.MAX_VALUE, '['), '[')).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testConvertToDBPath() {
+        assertThat(JsonRecordSupport.convertToDBPath("")).isEqualTo("/");
+        assertThat(JsonRecordSupport.convertToDBPath("/")).isEqualTo("/");
+        assertThat(JsonRecordSupport.convertToDBPath("a//b/")).isEqualTo("/a/b/");
+        assertThat(JsonRecordSupport.convertToDBPath("/users/u1000/0/12")).isEqualTo("/users/u1000/[0/[[212/");
+    }
 }
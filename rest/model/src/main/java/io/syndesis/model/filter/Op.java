@@ -27,7 +27,7 @@ public interface Op extends Serializable {
 
     Op EQUALS = new Op.Builder().label("equals").operator("==").build();
     Op EQUALS_IGNORE_CASE = new Op.Builder().label("equals (ignores case)").operator("=~").build();
-    Op NOT_EQUALS = new Op.Builder().label("not equals").operator("==").build();
+    Op NOT_EQUALS = new Op.Builder().label("not equals").operator("!=").build();
 
     Op LESS_THAN = new Op.Builder().label("").operator("<").build();
     Op LESS_THAN_OR_EQUALS = new Op.Builder().label("").operator("<=").build();
@@ -24,6 +24,7 @@ public class DeploymentData {
     private final Map<String, String> annotations = new HashMap<>();
     private final Map<String, String> labels = new HashMap<>();
     private final Map<String, String> secret = new HashMap<>();
+    private String image;
 
     public Map<String, String> getAnnotations() {
         return annotations;
@@ -37,6 +38,13 @@ public class DeploymentData {
         return secret;
     }
 
+    /**
+     * @return the prebuilt image to deploy, or null to deploy the image built for the integration
+     */
+    public String getImage() {
+        return image;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -62,5 +70,10 @@ public class DeploymentData {
              return this;
         }
 
+        public DeploymentData.Builder withImage(String image) {
+             that.image = image;
+             return this;
+        }
+
     }
 }
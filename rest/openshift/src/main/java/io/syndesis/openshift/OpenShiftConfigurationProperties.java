@@ -38,6 +38,12 @@ public class OpenShiftConfigurationProperties {
     private String deploymentMemoryLimitMi = "512";
     private String mavenOptions = "-XX:+UseG1GC -XX:+UseStringDeduplication -Xmx300m";
 
+    // Repository manager shared by the integration builds, used as a mirror of all repositories
+    private String mavenMirrorUrl;
+
+    // Whether the builds only use the repository pre-populated in the builder image
+    private boolean mavenOffline;
+
     private String apiBaseUrl;
 
     private String namespace;
@@ -121,6 +127,22 @@ public class OpenShiftConfigurationProperties {
         this.mavenOptions = mavenOptions;
     }
 
+    public String getMavenMirrorUrl() {
+        return mavenMirrorUrl;
+    }
+
+    public void setMavenMirrorUrl(String mavenMirrorUrl) {
+        this.mavenMirrorUrl = mavenMirrorUrl;
+    }
+
+    public boolean isMavenOffline() {
+        return mavenOffline;
+    }
+
+    public void setMavenOffline(boolean mavenOffline) {
+        this.mavenOffline = mavenOffline;
+    }
+
     public String getIntegrationDataPath() {
         return integrationDataPath;
     }
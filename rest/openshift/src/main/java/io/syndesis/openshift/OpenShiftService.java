@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import io.fabric8.openshift.api.model.DeploymentConfig;
 import io.fabric8.openshift.api.model.User;
@@ -27,6 +28,7 @@ public interface OpenShiftService {
 
     String REVISION_ID_ANNOTATION = "syndesis.io/revision-id";
     String USERNAME_LABEL = "syndesis.io/username";
+    String CONFIGURATION_PATH = "/deployments/config";
 
     /**
      * Start a previously created build with the data from the given directory
@@ -38,7 +40,10 @@ public interface OpenShiftService {
     void build(String name, DeploymentData data, InputStream tarInputStream) throws IOException;
 
     /**
-     * Perform a deployment
+     * Perform a deployment, of the image built for the integration or of the
+     * prebuilt image set in the deployment data.  The secret entries are mounted
+     * as files in {@link #CONFIGURATION_PATH}, which a prebuilt image has on its
+     * class path.
      *
      * @param data the deployment data to use
      * @param name name of the deployment to trigger
@@ -96,6 +101,23 @@ public interface OpenShiftService {
      */
     List<DeploymentConfig> getDeploymentsByLabel(Map<String, String> labels);
 
+    /**
+     * Registers a listener called with the name of a deployment each time the status of
+     * the deployment, or of one of its builds, changes.  While listeners are registered
+     * the service watches the deployments and builds and answers {@link #isBuildStarted},
+     * {@link #isDeploymentReady}, {@link #isScaled} and {@link #getDeploymentsByLabel}
+     * from a local cache.
+     *
+     * @param listener called with the name of the deployment, must not block
+     * @return true if status changes are pushed to the listener, false if they have to be polled
+     */
+    boolean addStatusListener(Consumer<String> listener);
+
+    /**
+     * Unregisters a listener added with {@link #addStatusListener(Consumer)}.
+     */
+    void removeStatusListener(Consumer<String> listener);
+
     /**
      * Returns the currently logged in user.
      * @return The currently logged in user.
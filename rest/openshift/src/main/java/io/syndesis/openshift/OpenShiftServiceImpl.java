@@ -17,8 +17,10 @@ package io.syndesis.openshift;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import io.fabric8.kubernetes.api.model.EnvVar;
 import io.fabric8.kubernetes.api.model.Quantity;
@@ -35,10 +37,12 @@ public class OpenShiftServiceImpl implements OpenShiftService {
 
     private final NamespacedOpenShiftClient openShiftClient;
     private final OpenShiftConfigurationProperties config;
+    private final OpenShiftStatusWatcher statusWatcher;
 
     public OpenShiftServiceImpl(NamespacedOpenShiftClient openShiftClient, OpenShiftConfigurationProperties config) {
         this.openShiftClient = openShiftClient;
         this.config = config;
+        this.statusWatcher = new OpenShiftStatusWatcher(openShiftClient);
     }
 
     @Override
@@ -55,7 +59,9 @@ public class OpenShiftServiceImpl implements OpenShiftService {
     public void deploy(String name, DeploymentData deploymentData) {
         String sName = Names.sanitize(name);
         ensureDeploymentConfig(sName, deploymentData);
-        updateImageName(sName);
+        if (deploymentData.getImage() == null) {
+            updateImageName(sName);
+        }
         ensureSecret(sName, deploymentData);
 
         openShiftClient.deploymentConfigs().withName(sName).deployLatest();
@@ -89,7 +95,11 @@ public class OpenShiftServiceImpl implements OpenShiftService {
     @Override
     public boolean isDeploymentReady(String name) {
         String sName = Names.sanitize(name);
-        return openShiftClient.deploymentConfigs().withName(sName).isReady();
+        if (statusWatcher.isSynced()) {
+            return isReady(statusWatcher.getDeploymentConfig(sName));
+        }
+        // Same readiness as for the cached deployment configs
+        return isReady(openShiftClient.deploymentConfigs().withName(sName).get());
     }
 
     @Override
@@ -111,18 +121,24 @@ public class OpenShiftServiceImpl implements OpenShiftService {
     @Override
     public void scale(String name, int desiredReplicas) {
         String sName = Names.sanitize(name);
-        openShiftClient.deploymentConfigs().withName(sName).edit()
+        DeploymentConfig dc = openShiftClient.deploymentConfigs().withName(sName).edit()
                        .editSpec()
                        .withReplicas(desiredReplicas)
                        .endSpec()
                        .done();
+        statusWatcher.recordDeploymentConfig(dc);
     }
 
 
     @Override
     public boolean isScaled(String name, int desiredReplicas) {
         String sName = Names.sanitize(name);
-        DeploymentConfig dc = openShiftClient.deploymentConfigs().withName(sName).get();
+        DeploymentConfig dc;
+        if (statusWatcher.isSynced()) {
+            dc = statusWatcher.getDeploymentConfig(sName);
+        } else {
+            dc = openShiftClient.deploymentConfigs().withName(sName).get();
+        }
 
         int allReplicas = 0;
         int readyReplicas = 0;
@@ -137,15 +153,32 @@ public class OpenShiftServiceImpl implements OpenShiftService {
     @Override
     public boolean isBuildStarted(String name) {
         String sName = Names.sanitize(name);
+        if (statusWatcher.isSynced()) {
+            return statusWatcher.isBuildRunning(sName);
+        }
         return !openShiftClient.builds()
-                               .withLabel("openshift.io/build-config.name", sName)
+                               .withLabel(OpenShiftStatusWatcher.BUILD_CONFIG_LABEL, sName)
                                .withField("status", "Running")
                                .list().getItems().isEmpty();
     }
 
+    @Override
+    public boolean addStatusListener(Consumer<String> listener) {
+        statusWatcher.addListener(listener);
+        return true;
+    }
+
+    @Override
+    public void removeStatusListener(Consumer<String> listener) {
+        statusWatcher.removeListener(listener);
+    }
+
 
     @Override
     public List<DeploymentConfig> getDeploymentsByLabel(Map<String, String> labels) {
+        if (statusWatcher.isSynced()) {
+            return statusWatcher.getDeploymentConfigs(labels);
+        }
         return openShiftClient.deploymentConfigs().withLabels(labels).list().getItems();
     }
 
@@ -160,6 +193,14 @@ public class OpenShiftServiceImpl implements OpenShiftService {
         return nr != null ? nr : 0;
     }
 
+    private boolean isReady(DeploymentConfig dc) {
+        if (dc == null || dc.getSpec() == null || dc.getStatus() == null) {
+            return false;
+        }
+        int desiredReplicas = nullSafe(dc.getSpec().getReplicas());
+        return desiredReplicas > 0 && nullSafe(dc.getStatus().getAvailableReplicas()) >= desiredReplicas;
+    }
+
 //==================================================================================================
 
     private void ensureImageStreams(String name) {
@@ -172,7 +213,15 @@ public class OpenShiftServiceImpl implements OpenShiftService {
     }
 
     private void ensureDeploymentConfig(String name, DeploymentData deploymentData) {
-        openShiftClient.deploymentConfigs().withName(name).createOrReplaceWithNew()
+        List<EnvVar> env = new ArrayList<>();
+        env.add(new EnvVar("LOADER_HOME", config.getIntegrationDataPath(), null));
+        if (deploymentData.getImage() != null) {
+            // The prebuilt image loads the flow and its resources from the mounted secret
+            env.add(new EnvVar("LOADER_PATH", CONFIGURATION_PATH, null));
+        }
+
+        // Counted by the quota checks right away, not only once the watch reports it
+        DeploymentConfig dc = openShiftClient.deploymentConfigs().withName(name).createOrReplaceWithNew()
             .withNewMetadata()
             .withName(name)
             .addToAnnotations(deploymentData.getAnnotations())
@@ -193,12 +242,12 @@ public class OpenShiftServiceImpl implements OpenShiftService {
             .withNewMetadata().addToLabels("integration", name).endMetadata()
             .withNewSpec()
             .addNewContainer()
-            .withImage(" ").withImagePullPolicy("Always").withName(name)
-            .withEnv(new EnvVar("LOADER_HOME", config.getIntegrationDataPath(), null))
+            .withImage(deploymentData.getImage() != null ? deploymentData.getImage() : " ").withImagePullPolicy("Always").withName(name)
+            .withEnv(env)
             .addNewPort().withName("jolokia").withContainerPort(8778).endPort()
             .addNewVolumeMount()
                 .withName("secret-volume")
-                .withMountPath("/deployments/config")
+                .withMountPath(CONFIGURATION_PATH)
                 .withReadOnly(false)
             .endVolumeMount()
             .endContainer()
@@ -221,6 +270,7 @@ public class OpenShiftServiceImpl implements OpenShiftService {
 //            .endTrigger()
             .endSpec()
             .done();
+        statusWatcher.recordDeploymentConfig(dc);
     }
 
 
@@ -246,7 +296,7 @@ public class OpenShiftServiceImpl implements OpenShiftService {
                 .withIncremental(true)
                 // TODO: This environment setup needs to be externalized into application.properties
                 // https://github.com/syndesisio/syndesis-rest/issues/682
-                .withEnv(new EnvVar("MAVEN_OPTS", config.getMavenOptions(), null))
+                .withEnv(buildEnvironment())
               .endSourceStrategy()
             .endStrategy()
             .withNewOutput().withNewTo().withKind("ImageStreamTag").withName(name + ":latest").endTo().endOutput()
@@ -254,6 +304,20 @@ public class OpenShiftServiceImpl implements OpenShiftService {
             .done();
     }
 
+    /* default */ List<EnvVar> buildEnvironment() {
+        List<EnvVar> env = new ArrayList<>();
+        env.add(new EnvVar("MAVEN_OPTS", config.getMavenOptions(), null));
+        // Read by the assemble script of the generated project
+        String mirrorUrl = config.getMavenMirrorUrl();
+        if (mirrorUrl != null && !mirrorUrl.isEmpty()) {
+            env.add(new EnvVar("MAVEN_MIRROR_URL", mirrorUrl, null));
+        }
+        if (config.isMavenOffline()) {
+            env.add(new EnvVar("SYNDESIS_MAVEN_OFFLINE", "true", null));
+        }
+        return env;
+    }
+
     private boolean removeBuildConfig(String projectName) {
         return openShiftClient.buildConfigs().withName(projectName).delete();
     }
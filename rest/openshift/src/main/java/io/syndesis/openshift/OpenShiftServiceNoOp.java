@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import io.fabric8.openshift.api.model.DeploymentConfig;
 import io.fabric8.openshift.api.model.User;
@@ -67,6 +68,16 @@ public class OpenShiftServiceNoOp implements OpenShiftService {
         return Collections.emptyList();
     }
 
+    @Override
+    public boolean addStatusListener(Consumer<String> listener) {
+        return false;
+    }
+
+    @Override
+    public void removeStatusListener(Consumer<String> listener) {
+        // Empty no-op just for testing
+    }
+
     @Override
     public User whoAmI(String openShiftToken) {
         return new UserBuilder().withNewMetadata().withName("openshift_noop").and().withFullName("OpenShift NoOp").build();
@@ -0,0 +1,375 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.openshift;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.openshift.api.model.Build;
+import io.fabric8.openshift.api.model.BuildList;
+import io.fabric8.openshift.api.model.DeploymentConfig;
+import io.fabric8.openshift.api.model.DeploymentConfigList;
+import io.fabric8.openshift.client.NamespacedOpenShiftClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a local copy of the status of the integration {@link DeploymentConfig}s and
+ * of the running builds, maintained by watching the API server instead of asking
+ * it on every status check.  Listeners get the name of a deployment each time its
+ * status, or the status of one of its builds, changes.  The deployments are also
+ * indexed by user so that per-user quota checks don't have to go through all of them.
+ *
+ * When a watch closes the cache is no longer trusted until the resources are
+ * listed again and the watches re-established from the version of the lists.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class OpenShiftStatusWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(OpenShiftStatusWatcher.class);
+
+    /* default */ static final String BUILD_CONFIG_LABEL = "openshift.io/build-config.name";
+    private static final long RESTART_DELAY_IN_MILLIS = 10_000;
+
+    private final NamespacedOpenShiftClient openShiftClient;
+    private final long restartDelayInMillis;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    // Deployment configs by name
+    private final Map<String, DeploymentConfig> deployments = new ConcurrentHashMap<>();
+    // Deployment config names by the value of their user label, updated with the
+    // deployments while holding its own lock
+    private final Map<String, Set<String>> deploymentsByUser = new ConcurrentHashMap<>();
+    // Build config names of the running builds, by build name
+    private final Map<String, String> runningBuilds = new ConcurrentHashMap<>();
+
+    private volatile boolean synced;
+    private Watch deploymentWatch;
+    private Watch buildWatch;
+    private ScheduledExecutorService restarter;
+
+    /* default */ OpenShiftStatusWatcher(NamespacedOpenShiftClient openShiftClient) {
+        this(openShiftClient, RESTART_DELAY_IN_MILLIS);
+    }
+
+    /* default */ OpenShiftStatusWatcher(NamespacedOpenShiftClient openShiftClient, long restartDelayInMillis) {
+        this.openShiftClient = openShiftClient;
+        this.restartDelayInMillis = restartDelayInMillis;
+    }
+
+    /* default */ synchronized void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+        if (restarter == null) {
+            restarter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "openshift-status-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            restarter.execute(this::restart);
+        }
+    }
+
+    /* default */ synchronized void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && restarter != null) {
+            restarter.shutdownNow();
+            restarter = null;
+            closeWatches();
+        }
+    }
+
+    /**
+     * @return true if the cached status reflects the API server
+     */
+    /* default */ boolean isSynced() {
+        return synced;
+    }
+
+    /* default */ DeploymentConfig getDeploymentConfig(String name) {
+        return deployments.get(name);
+    }
+
+    /**
+     * @return the cached deployment configs holding all the given labels
+     */
+    /* default */ List<DeploymentConfig> getDeploymentConfigs(Map<String, String> labels) {
+        Collection<DeploymentConfig> candidates;
+        String user = labels.get(OpenShiftService.USERNAME_LABEL);
+        if (user == null) {
+            candidates = deployments.values();
+        } else {
+            candidates = new ArrayList<>();
+            for (String name : deploymentsByUser.getOrDefault(user, Collections.emptySet())) {
+                DeploymentConfig dc = deployments.get(name);
+                if (dc != null) {
+                    candidates.add(dc);
+                }
+            }
+        }
+
+        List<DeploymentConfig> answer = new ArrayList<>();
+        for (DeploymentConfig dc : candidates) {
+            Map<String, String> dcLabels = dc.getMetadata().getLabels();
+            if (dcLabels != null && dcLabels.entrySet().containsAll(labels.entrySet())) {
+                answer.add(dc);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Records a deployment config just created or changed through the API server,
+     * ahead of its watch event, so that the quota checks that follow count it.  An
+     * older version never replaces the cached one.
+     */
+    /* default */ void recordDeploymentConfig(DeploymentConfig dc) {
+        if (dc == null || dc.getMetadata() == null) {
+            return;
+        }
+        String name = dc.getMetadata().getName();
+        synchronized (deploymentsByUser) {
+            DeploymentConfig cached = deployments.get(name);
+            if (cached == null || isNewer(dc, cached)) {
+                putDeployment(name, dc);
+            }
+        }
+    }
+
+    private static boolean isNewer(DeploymentConfig dc, DeploymentConfig than) {
+        try {
+            return Long.parseLong(dc.getMetadata().getResourceVersion()) > Long.parseLong(than.getMetadata().getResourceVersion());
+        } catch (NumberFormatException e) {
+            // Versions are meant to be opaque, the one the API server just returned wins
+            return true;
+        }
+    }
+
+    /* default */ boolean isBuildRunning(String buildConfigName) {
+        return runningBuilds.containsValue(buildConfigName);
+    }
+
+    private synchronized void restart() {
+        if (restarter == null) {
+            return;
+        }
+        closeWatches();
+        try {
+            // List first and then watch from the version of the lists, so that the
+            // watches start with the changes that follow the listed state: no change
+            // is missed and no stale listed object replaces a newer watched one
+            DeploymentConfigList deploymentList = openShiftClient.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL).list();
+            Set<String> changed = new HashSet<>();
+            Map<String, DeploymentConfig> listed = new ConcurrentHashMap<>();
+            for (DeploymentConfig dc : deploymentList.getItems()) {
+                listed.put(dc.getMetadata().getName(), dc);
+            }
+            deployments.keySet().stream().filter(name -> !listed.containsKey(name)).forEach(changed::add);
+            changed.forEach(this::removeDeployment);
+            listed.forEach((name, dc) -> {
+                DeploymentConfig previous = putDeployment(name, dc);
+                if (previous == null || !Objects.equals(previous.getStatus(), dc.getStatus())) {
+                    changed.add(name);
+                }
+            });
+
+            BuildList buildList = openShiftClient.builds().withLabel(BUILD_CONFIG_LABEL).list();
+            Map<String, String> running = new ConcurrentHashMap<>();
+            for (Build build : buildList.getItems()) {
+                if (isRunning(build)) {
+                    running.put(build.getMetadata().getName(), build.getMetadata().getLabels().get(BUILD_CONFIG_LABEL));
+                }
+            }
+            runningBuilds.forEach((build, config) -> {
+                if (!running.containsKey(build)) {
+                    changed.add(config);
+                }
+            });
+            running.forEach((build, config) -> {
+                if (runningBuilds.put(build, config) == null) {
+                    changed.add(config);
+                }
+            });
+            runningBuilds.keySet().retainAll(running.keySet());
+
+            deploymentWatch = openShiftClient.deploymentConfigs()
+                .withLabel(OpenShiftService.USERNAME_LABEL)
+                .watch(resourceVersion(deploymentList.getMetadata()), new StatusWatcher<>(this::onDeploymentEvent));
+            buildWatch = openShiftClient.builds()
+                .withLabel(BUILD_CONFIG_LABEL)
+                .watch(resourceVersion(buildList.getMetadata()), new StatusWatcher<>(this::onBuildEvent));
+
+            synced = true;
+            LOG.info("Watching {} deployments and {} running builds", deployments.size(), runningBuilds.size());
+            changed.forEach(this::notifyListeners);
+        } catch (KubernetesClientException e) {
+            LOG.warn("Could not watch the deployments and builds, retrying in {} ms", restartDelayInMillis, e);
+            scheduleRestart();
+        }
+    }
+
+    private static String resourceVersion(ListMeta metadata) {
+        return metadata == null ? null : metadata.getResourceVersion();
+    }
+
+    private synchronized void scheduleRestart() {
+        synced = false;
+        if (restarter != null) {
+            restarter.schedule(this::restart, restartDelayInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void closeWatches() {
+        synced = false;
+        if (deploymentWatch != null) {
+            deploymentWatch.close();
+            deploymentWatch = null;
+        }
+        if (buildWatch != null) {
+            buildWatch.close();
+            buildWatch = null;
+        }
+    }
+
+    private void onDeploymentEvent(Watcher.Action action, DeploymentConfig dc) {
+        String name = dc.getMetadata().getName();
+        DeploymentConfig previous;
+        if (action == Watcher.Action.DELETED) {
+            previous = removeDeployment(name);
+        } else {
+            previous = putDeployment(name, dc);
+        }
+        if (action == Watcher.Action.DELETED || previous == null || !Objects.equals(previous.getStatus(), dc.getStatus())) {
+            notifyListeners(name);
+        }
+    }
+
+    private DeploymentConfig putDeployment(String name, DeploymentConfig dc) {
+        synchronized (deploymentsByUser) {
+            DeploymentConfig previous = deployments.put(name, dc);
+            String previousUser = user(previous);
+            String user = user(dc);
+            if (previousUser != null && !previousUser.equals(user)) {
+                unindex(previousUser, name);
+            }
+            if (user != null) {
+                deploymentsByUser.computeIfAbsent(user, u -> ConcurrentHashMap.newKeySet()).add(name);
+            }
+            return previous;
+        }
+    }
+
+    private DeploymentConfig removeDeployment(String name) {
+        synchronized (deploymentsByUser) {
+            DeploymentConfig previous = deployments.remove(name);
+            String user = user(previous);
+            if (user != null) {
+                unindex(user, name);
+            }
+            return previous;
+        }
+    }
+
+    private void unindex(String user, String name) {
+        Set<String> names = deploymentsByUser.get(user);
+        if (names != null) {
+            names.remove(name);
+            if (names.isEmpty()) {
+                deploymentsByUser.remove(user);
+            }
+        }
+    }
+
+    private static String user(DeploymentConfig dc) {
+        if (dc == null || dc.getMetadata().getLabels() == null) {
+            return null;
+        }
+        return dc.getMetadata().getLabels().get(OpenShiftService.USERNAME_LABEL);
+    }
+
+    private void onBuildEvent(Watcher.Action action, Build build) {
+        String name = build.getMetadata().getName();
+        String config = build.getMetadata().getLabels().get(BUILD_CONFIG_LABEL);
+        boolean running = action != Watcher.Action.DELETED && isRunning(build);
+        boolean wasRunning;
+        if (running) {
+            wasRunning = runningBuilds.put(name, config) != null;
+        } else {
+            wasRunning = runningBuilds.remove(name) != null;
+        }
+        if (running != wasRunning) {
+            notifyListeners(config);
+        }
+    }
+
+    private void notifyListeners(String name) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(name);
+            } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+                LOG.error("Error while notifying the status change of {}", name, e);
+            }
+        }
+    }
+
+    private static boolean isRunning(Build build) {
+        return build.getStatus() != null && "Running".equals(build.getStatus().getPhase());
+    }
+
+    private class StatusWatcher<T> implements Watcher<T> {
+        private final EventHandler<T> handler;
+
+        StatusWatcher(EventHandler<T> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void eventReceived(Action action, T resource) {
+            if (action == Action.ERROR) {
+                LOG.warn("Error event while watching: {}", resource);
+                return;
+            }
+            handler.handle(action, resource);
+        }
+
+        @Override
+        public void onClose(KubernetesClientException cause) {
+            if (cause != null) {
+                LOG.warn("Watch closed, the status will be listed again", cause);
+                scheduleRestart();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventHandler<T> {
+        void handle(Watcher.Action action, T resource);
+    }
+}
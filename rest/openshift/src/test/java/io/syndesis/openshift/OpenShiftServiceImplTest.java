@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.openshift;
+
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.openshift.client.NamespacedOpenShiftClient;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class OpenShiftServiceImplTest {
+
+    private final OpenShiftConfigurationProperties config = new OpenShiftConfigurationProperties();
+
+    @Test
+    public void shouldOnlyPassMavenOptionsToTheBuildByDefault() {
+        assertThat(service().buildEnvironment())
+            .containsExactly(new EnvVar("MAVEN_OPTS", config.getMavenOptions(), null));
+    }
+
+    @Test
+    public void shouldPassMavenMirrorToTheBuild() {
+        config.setMavenMirrorUrl("http://nexus:8081/repository/maven-public/");
+
+        assertThat(service().buildEnvironment())
+            .contains(new EnvVar("MAVEN_MIRROR_URL", "http://nexus:8081/repository/maven-public/", null))
+            .extracting(EnvVar::getName).doesNotContain("SYNDESIS_MAVEN_OFFLINE");
+    }
+
+    @Test
+    public void shouldPassMavenOfflineToTheBuild() {
+        config.setMavenOffline(true);
+
+        assertThat(service().buildEnvironment())
+            .contains(new EnvVar("SYNDESIS_MAVEN_OFFLINE", "true", null))
+            .extracting(EnvVar::getName).doesNotContain("MAVEN_MIRROR_URL");
+    }
+
+    @Test
+    public void shouldNotPassAnEmptyMavenMirrorToTheBuild() {
+        config.setMavenMirrorUrl("");
+
+        assertThat(service().buildEnvironment())
+            .extracting(EnvVar::getName).containsExactly("MAVEN_OPTS");
+    }
+
+    private OpenShiftServiceImpl service() {
+        return new OpenShiftServiceImpl(mock(NamespacedOpenShiftClient.class), config);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.openshift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.Watchable;
+import io.fabric8.openshift.api.model.Build;
+import io.fabric8.openshift.api.model.BuildBuilder;
+import io.fabric8.openshift.api.model.BuildListBuilder;
+import io.fabric8.openshift.api.model.DeploymentConfig;
+import io.fabric8.openshift.api.model.DeploymentConfigBuilder;
+import io.fabric8.openshift.api.model.DeploymentConfigListBuilder;
+import io.fabric8.openshift.client.NamespacedOpenShiftClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class OpenShiftStatusWatcherTest {
+
+    private final NamespacedOpenShiftClient client = mock(NamespacedOpenShiftClient.class, RETURNS_DEEP_STUBS);
+    private final List<String> changes = new CopyOnWriteArrayList<>();
+    private final Consumer<String> listener = changes::add;
+    private OpenShiftStatusWatcher watcher;
+
+    @Before
+    public void setup() {
+        when(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL).list()).thenReturn(
+            new DeploymentConfigListBuilder()
+                .withNewMetadata().withResourceVersion("10").endMetadata()
+                .withItems(deploymentConfig("a", "alice", 0))
+                .build(),
+            new DeploymentConfigListBuilder()
+                .withNewMetadata().withResourceVersion("30").endMetadata()
+                .withItems(deploymentConfig("b", "bob", 1))
+                .build());
+        when(client.builds().withLabel(OpenShiftStatusWatcher.BUILD_CONFIG_LABEL).list()).thenReturn(
+            new BuildListBuilder()
+                .withNewMetadata().withResourceVersion("20").endMetadata()
+                .build());
+
+        watcher = new OpenShiftStatusWatcher(client, 500);
+    }
+
+    @After
+    public void tearDown() {
+        watcher.removeListener(listener);
+    }
+
+    @Test
+    public void shouldListThenWatchFromTheListedVersion() {
+        assertThat(watcher.isSynced()).isFalse();
+        watcher.addListener(listener);
+        await().until(watcher::isSynced);
+
+        assertThat(captureWatcher(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL), "10")).isNotNull();
+        assertThat(captureWatcher(client.builds().withLabel(OpenShiftStatusWatcher.BUILD_CONFIG_LABEL), "20")).isNotNull();
+        assertThat(watcher.getDeploymentConfig("a")).isNotNull();
+        assertThat(watcher.getDeploymentConfigs(Collections.singletonMap(OpenShiftService.USERNAME_LABEL, "alice"))).hasSize(1);
+        assertThat(changes).containsExactly("a");
+    }
+
+    @Test
+    public void shouldApplyWatchedChanges() {
+        watcher.addListener(listener);
+        await().until(watcher::isSynced);
+        Watcher deployments = captureWatcher(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL), "10");
+        Watcher builds = captureWatcher(client.builds().withLabel(OpenShiftStatusWatcher.BUILD_CONFIG_LABEL), "20");
+        changes.clear();
+
+        // Same status, no change to notify
+        deployments.eventReceived(Watcher.Action.MODIFIED, deploymentConfig("a", "alice", 0));
+        assertThat(changes).isEmpty();
+
+        deployments.eventReceived(Watcher.Action.MODIFIED, deploymentConfig("a", "alice", 1));
+        assertThat(watcher.getDeploymentConfig("a").getStatus().getAvailableReplicas()).isEqualTo(1);
+        assertThat(changes).containsExactly("a");
+
+        builds.eventReceived(Watcher.Action.ADDED, build("a-1", "a", "Running"));
+        assertThat(watcher.isBuildRunning("a")).isTrue();
+        builds.eventReceived(Watcher.Action.MODIFIED, build("a-1", "a", "Complete"));
+        assertThat(watcher.isBuildRunning("a")).isFalse();
+        assertThat(changes).containsExactly("a", "a", "a");
+
+        deployments.eventReceived(Watcher.Action.DELETED, deploymentConfig("a", "alice", 1));
+        assertThat(watcher.getDeploymentConfig("a")).isNull();
+        assertThat(watcher.getDeploymentConfigs(Collections.singletonMap(OpenShiftService.USERNAME_LABEL, "alice"))).isEmpty();
+        assertThat(changes).containsExactly("a", "a", "a", "a");
+    }
+
+    @Test
+    public void shouldResyncWhenTheWatchCloses() {
+        watcher.addListener(listener);
+        await().until(watcher::isSynced);
+        Watcher deployments = captureWatcher(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL), "10");
+        changes.clear();
+
+        deployments.onClose(new KubernetesClientException("Gone"));
+        assertThat(watcher.isSynced()).isFalse();
+
+        await().until(watcher::isSynced);
+        assertThat(captureWatcher(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL), "30")).isNotNull();
+        assertThat(watcher.getDeploymentConfig("a")).isNull();
+        assertThat(watcher.getDeploymentConfig("b")).isNotNull();
+        assertThat(changes).containsOnly("a", "b");
+    }
+
+    @Test
+    public void shouldCountRecordedDeploymentsBeforeTheirWatchEvent() {
+        watcher.addListener(listener);
+        await().until(watcher::isSynced);
+        Watcher deployments = captureWatcher(client.deploymentConfigs().withLabel(OpenShiftService.USERNAME_LABEL), "10");
+
+        // Created by the controller, the watch hasn't reported it yet
+        watcher.recordDeploymentConfig(deploymentConfig("c", "alice", 0, "40"));
+        assertThat(watcher.getDeploymentConfigs(Collections.singletonMap(OpenShiftService.USERNAME_LABEL, "alice"))).hasSize(2);
+
+        // An older version never replaces the recorded one
+        watcher.recordDeploymentConfig(deploymentConfig("c", "alice", 1, "35"));
+        assertThat(watcher.getDeploymentConfig("c").getStatus().getAvailableReplicas()).isZero();
+
+        deployments.eventReceived(Watcher.Action.MODIFIED, deploymentConfig("c", "alice", 1, "41"));
+        assertThat(watcher.getDeploymentConfig("c").getStatus().getAvailableReplicas()).isEqualTo(1);
+        assertThat(watcher.getDeploymentConfigs(Collections.singletonMap(OpenShiftService.USERNAME_LABEL, "alice"))).hasSize(2);
+    }
+
+    private static Watcher captureWatcher(Watchable watchable, String resourceVersion) {
+        ArgumentCaptor<Watcher> captor = ArgumentCaptor.forClass(Watcher.class);
+        verify(watchable, timeout(10_000)).watch(eq(resourceVersion), captor.capture());
+        return captor.getValue();
+    }
+
+    private static DeploymentConfig deploymentConfig(String name, String user, int availableReplicas) {
+        return deploymentConfig(name, user, availableReplicas, null);
+    }
+
+    private static DeploymentConfig deploymentConfig(String name, String user, int availableReplicas, String resourceVersion) {
+        return new DeploymentConfigBuilder()
+            .withNewMetadata().withName(name).withResourceVersion(resourceVersion).addToLabels(OpenShiftService.USERNAME_LABEL, user).endMetadata()
+            .withNewStatus().withAvailableReplicas(availableReplicas).endStatus()
+            .build();
+    }
+
+    private static Build build(String name, String buildConfig, String phase) {
+        return new BuildBuilder()
+            .withNewMetadata().withName(name).addToLabels(OpenShiftStatusWatcher.BUILD_CONFIG_LABEL, buildConfig).endMetadata()
+            .withNewStatus().withPhase(phase).endStatus()
+            .build();
+    }
+}
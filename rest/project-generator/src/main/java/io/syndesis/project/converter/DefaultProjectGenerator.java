@@ -21,16 +21,19 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,16 +41,25 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
 import io.syndesis.connector.catalog.ConnectorCatalog;
+import io.syndesis.core.Json;
 import io.syndesis.core.Names;
 import io.syndesis.dao.extension.ExtensionDataManager;
 import io.syndesis.dao.manager.DataManager;
@@ -56,6 +68,8 @@ import io.syndesis.integration.model.SyndesisModel;
 import io.syndesis.integration.model.YamlHelpers;
 import io.syndesis.integration.support.Strings;
 import io.syndesis.model.action.ConnectorAction;
+import io.syndesis.model.connection.Connection;
+import io.syndesis.model.connection.Connector;
 import io.syndesis.model.extension.Extension;
 import io.syndesis.model.integration.Integration;
 import io.syndesis.model.integration.Step;
@@ -68,13 +82,17 @@ import io.syndesis.project.converter.visitor.StepVisitorContext;
 import io.syndesis.project.converter.visitor.StepVisitorFactory;
 import io.syndesis.project.converter.visitor.StepVisitorFactoryRegistry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DefaultProjectGenerator implements ProjectGenerator {
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class DefaultProjectGenerator implements ProjectGenerator, AutoCloseable {
     private static final ObjectMapper YAML_OBJECT_MAPPER = YamlHelpers.createObjectMapper();
+    private static final String RESOURCES_PATH = "src/main/resources/";
 
     private final MustacheFactory mf = new DefaultMustacheFactory();
     private final ProjectGeneratorProperties generatorProperties;
@@ -85,6 +103,10 @@ public class DefaultProjectGenerator implements ProjectGenerator {
     private final Mustache applicationJavaMustache;
     private final Mustache applicationPropertiesMustache;
     private final Mustache pomMustache;
+    private final ProjectCache cache;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor resolver;
+    private final LongAdder failedGenerations = new LongAdder();
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultProjectGenerator.class);
 
@@ -103,6 +125,55 @@ public class DefaultProjectGenerator implements ProjectGenerator {
         this.applicationJavaMustache = compile(generatorProperties, "Application.java.mustache", "Application.java");
         this.applicationPropertiesMustache = compile(generatorProperties, "application.properties.mustache", "application.properties");
         this.pomMustache = compile(generatorProperties, "pom.xml.mustache", "pom.xml");
+
+        String cacheDirectory = generatorProperties.getCacheDirectory();
+        this.cache = Strings.isEmpty(cacheDirectory) ? null : new ProjectCache(Paths.get(cacheDirectory));
+
+        // Writes the project tars while the callers read them
+        this.executor = newExecutor("project-generator", generatorProperties.getThreads());
+        // Adds the connectors to the catalog, apart from the writers so that
+        // a long download never holds back the writing of a project
+        this.resolver = newExecutor("connector-resolver", generatorProperties.getResolverThreads());
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int threads) {
+        // Idle threads are let go
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor answer = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        answer.allowCoreThreadTimeOut(true);
+        return answer;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        resolver.shutdownNow();
+    }
+
+    /**
+     * @return the number of projects being written
+     */
+    public int getActiveGenerations() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of projects waiting for a thread to be written
+     */
+    public int getQueuedGenerations() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompletedGenerations() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getFailedGenerations() {
+        return failedGenerations.sum();
     }
 
     private Mustache compile(ProjectGeneratorProperties generatorProperties, String template, String name) throws IOException {
@@ -131,6 +202,37 @@ public class DefaultProjectGenerator implements ProjectGenerator {
 
     @Override
     public InputStream generate(Integration integration) throws IOException {
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = cacheKey(integration);
+            InputStream cached = cache.getProject(cacheKey);
+            if (cached != null) {
+                LOG.info("Integration [{}]: Project files read from cache", Names.sanitize(integration.getName()));
+                return cached;
+            }
+        }
+
+        addConnectors(integration);
+
+        if (cache != null) {
+            return cache.putProject(cacheKey, os -> writeProject(integration, os));
+        }
+
+        final ProducerInputStream is = new ProducerInputStream();
+        final OutputStream os = is.connectProducer(TimeUnit.SECONDS.toMillis(generatorProperties.getWriteTimeout()));
+
+        executor.execute(generateAddProjectTarEntries(integration, is, os));
+
+        return is;
+    }
+
+    /**
+     * Adds the connectors of all the steps to the catalog in parallel.  The catalog
+     * downloads a connector only once, generations needing a connector being added
+     * wait for it.
+     */
+    private void addConnectors(Integration integration) throws IOException {
+        final Set<String> gavs = new LinkedHashSet<>();
         for (Step step : integration.getSteps()) {
             LOG.debug("Integration [{}]: Adding step {} ",
                 Names.sanitize(integration.getName()),
@@ -139,16 +241,39 @@ public class DefaultProjectGenerator implements ProjectGenerator {
             step.getAction()
                 .filter(ConnectorAction.class::isInstance)
                 .map(ConnectorAction.class::cast)
-                .ifPresent(action -> connectorCatalog.addConnector(action.getDescriptor().getCamelConnectorGAV()));
+                .map(action -> action.getDescriptor().getCamelConnectorGAV())
+                .ifPresent(gavs::add);
         }
 
-        final PipedInputStream is = new PipedInputStream();
-        final ExecutorService executor = Executors.newSingleThreadExecutor();
-        final PipedOutputStream os = new PipedOutputStream(is);
+        try {
+            final List<CompletableFuture<Void>> additions = new ArrayList<>(gavs.size());
+            for (String gav : gavs) {
+                additions.add(CompletableFuture.runAsync(() -> connectorCatalog.addConnector(gav), resolver));
+            }
+            CompletableFuture.allOf(additions.toArray(new CompletableFuture<?>[additions.size()])).join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to add the connectors of integration " + integration.getName(), e.getCause());
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Failed to add the connectors of integration " + integration.getName(), e);
+        }
+    }
 
-        executor.submit(generateAddProjectTarEntries(integration, os));
+    @Override
+    public Map<String, byte[]> generateConfiguration(Integration integration) throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+
+        try (TarArchiveInputStream tis = new TarArchiveInputStream(generate(integration))) {
+            for (TarArchiveEntry entry = tis.getNextTarEntry(); entry != null; entry = tis.getNextTarEntry()) {
+                String name = entry.getName();
+                if (entry.isFile() && name.startsWith(RESOURCES_PATH) && name.indexOf('/', RESOURCES_PATH.length()) < 0) {
+                    files.put(name.substring(RESOURCES_PATH.length()), IOUtils.toByteArray(tis));
+                }
+            }
+        }
 
-        return is;
+        // Extensions are not part of a prebuilt runtime
+        files.remove("loader.properties");
+        return files;
     }
 
     private void addAdditionalResources(TarArchiveOutputStream tos) throws IOException {
@@ -179,45 +304,66 @@ public class DefaultProjectGenerator implements ProjectGenerator {
         }
     }
 
-    @SuppressWarnings("PMD.DoNotUseThreads")
-    private Runnable generateAddProjectTarEntries(Integration integration, OutputStream os) {
+    private Runnable generateAddProjectTarEntries(Integration integration, ProducerInputStream is, OutputStream os) {
         return () -> {
-            try (
-                TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
-                tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
-
-                addTarEntry(tos, "src/main/java/io/syndesis/example/Application.java", generate(integration, applicationJavaMustache));
-                addTarEntry(tos, "src/main/resources/application.properties", generate(integration, applicationPropertiesMustache));
-                addTarEntry(tos, "src/main/resources/syndesis.yml", generateFlow(tos, integration));
-                addTarEntry(tos, "pom.xml", generatePom(integration));
-                addResource(tos, ".s2i/bin/assemble", "s2i/assemble");
-
-                List<Extension> extensions = integration.getSteps().stream().map(Step::getExtension).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
-                if (!extensions.isEmpty() && extensionDataManager.isPresent()) {
-                    addTarEntry(tos, "src/main/resources/loader.properties", generateExtensionLoader(integration));
-
-                    for (Extension extension: extensions) {
-                        addTarEntry(
-                            tos,
-                            "extensions/" + Names.sanitize(extension.getExtensionId()) + ".jar",
-                            IOUtils.toByteArray(
-                                extensionDataManager.get().getExtensionBinaryFile(extension.getExtensionId())
-                            )
-                        );
-                    }
-                }
-
-                addAdditionalResources(tos);
-                LOG.info("Integration [{}]: Project files written to output stream",Names.sanitize(integration.getName()));
-            } catch (IOException|URISyntaxException e) {
+            try {
+                // The pipe is only closed once the outcome is known to the reader
+                writeProject(integration, new CloseShieldOutputStream(os));
+            } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") IOException | RuntimeException e) {
+                failedGenerations.increment();
                 if (LOG.isErrorEnabled()) {
                     LOG.error(String.format("Exception while creating runtime build tar for integration %s : %s",
                         integration.getName(), e.toString()), e);
                 }
+                // Let the reader fail instead of seeing a truncated tar
+                is.fail(e);
+            } finally {
+                IOUtils.closeQuietly(os);
             }
         };
     }
 
+    private void writeProject(Integration integration, OutputStream os) throws IOException {
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
+            tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+
+            addTarEntry(tos, "src/main/java/io/syndesis/example/Application.java", generate(integration, applicationJavaMustache));
+            addTarEntry(tos, RESOURCES_PATH + "application.properties", generate(integration, applicationPropertiesMustache));
+            addTarEntry(tos, RESOURCES_PATH + "syndesis.yml", generateFlow(tos, integration));
+            addTarEntry(tos, "pom.xml", generatePom(integration));
+            addResource(tos, ".s2i/bin/assemble", "s2i/assemble");
+
+            List<Extension> extensions = integration.getSteps().stream().map(Step::getExtension).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+            if (!extensions.isEmpty() && extensionDataManager.isPresent()) {
+                addTarEntry(tos, RESOURCES_PATH + "loader.properties", generateExtensionLoader(integration));
+
+                for (Extension extension: extensions) {
+                    addExtension(tos, extensionDataManager.get(), extension.getExtensionId());
+                }
+            }
+
+            addAdditionalResources(tos);
+            LOG.info("Integration [{}]: Project files written to output stream",Names.sanitize(integration.getName()));
+        }
+    }
+
+    private void addExtension(TarArchiveOutputStream tos, ExtensionDataManager extensionDataManager, String extensionId) throws IOException {
+        final String path = "extensions/" + Names.sanitize(extensionId) + ".jar";
+
+        // The binary of an installed extension never changes, so it can be shared by all the integrations using it
+        final String installedId = cache != null ? extensionDataManager.getInstalledPhysicalId(extensionId) : null;
+        if (installedId != null) {
+            Path binary = cache.getExtension(installedId, () -> extensionDataManager.getExtensionBinaryFile(extensionId));
+            TarArchiveEntry entry = new TarArchiveEntry(path);
+            entry.setSize(Files.size(binary));
+            tos.putArchiveEntry(entry);
+            Files.copy(binary, tos);
+            tos.closeArchiveEntry();
+        } else {
+            addTarEntry(tos, path, IOUtils.toByteArray(extensionDataManager.getExtensionBinaryFile(extensionId)));
+        }
+    }
+
     private void addTarEntry(TarArchiveOutputStream tos, String path, byte[] content) throws IOException {
         TarArchiveEntry entry = new TarArchiveEntry(path);
         entry.setSize(content.length);
@@ -226,7 +372,7 @@ public class DefaultProjectGenerator implements ProjectGenerator {
         tos.closeArchiveEntry();
     }
 
-    private void addResource(TarArchiveOutputStream tos, String destination, String resource) throws IOException, URISyntaxException {
+    private void addResource(TarArchiveOutputStream tos, String destination, String resource) throws IOException {
         final URL url = getClass().getResource(resource);
         final byte[] bytes = IOUtils.toByteArray(url);
 
@@ -257,16 +403,76 @@ public class DefaultProjectGenerator implements ProjectGenerator {
             }
         }
 
-        return generate(
-            new PomContext(
-                integration.getId().orElse(""),
-                integration.getName(),
-                integration.getDescription().orElse(null),
-                connectors,
-                extensions,
-                generatorProperties.getMavenProperties()),
-            pomMustache
-        );
+        final PomContext context = new PomContext(
+            integration.getId().orElse(""),
+            integration.getName(),
+            integration.getDescription().orElse(null),
+            connectors,
+            extensions,
+            generatorProperties.getMavenProperties());
+
+        if (cache != null) {
+            // Revisions that don't change the dependencies share the same pom
+            return cache.getFile("pom.xml:" + hash(context), () -> generate(context, pomMustache));
+        }
+        return generate(context, pomMustache);
+    }
+
+    /**
+     * Computes a hash of everything that goes into the generated project: the
+     * integration, the definitions of its connectors, the installed versions of its
+     * extensions and the generator settings.
+     */
+    private String cacheKey(Integration integration) throws IOException {
+        final Map<String, Object> connectors = new TreeMap<>();
+        final Map<String, Object> extensions = new TreeMap<>();
+
+        for (Step step : integration.getSteps()) {
+            step.getAction()
+                .filter(ConnectorAction.class::isInstance)
+                .map(ConnectorAction.class::cast)
+                .ifPresent(action -> {
+                    String connectorId = step.getConnection().flatMap(Connection::getConnectorId).orElse(action.getDescriptor().getConnectorId());
+                    if (connectorId != null) {
+                        connectors.put(connectorId, dataManager.fetch(Connector.class, connectorId));
+                    }
+                });
+            if (extensionDataManager.isPresent()) {
+                step.getExtension()
+                    .map(Extension::getExtensionId)
+                    .ifPresent(id -> extensions.put(id, extensionDataManager.get().getInstalledPhysicalId(id)));
+            }
+        }
+
+        final Map<String, Object> inputs = new LinkedHashMap<>();
+        inputs.put("id", integration.getId().orElse(null));
+        inputs.put("name", integration.getName());
+        inputs.put("description", integration.getDescription().orElse(null));
+        inputs.put("steps", integration.getSteps());
+        inputs.put("connectors", connectors);
+        inputs.put("extensions", extensions);
+        inputs.put("secretMaskingEnabled", generatorProperties.isSecretMaskingEnabled());
+        inputs.put("extensionPath", generatorProperties.getSyndesisExtensionPath());
+        inputs.put("overridePath", generatorProperties.getTemplates().getOverridePath());
+        inputs.put("additionalResources", generatorProperties.getTemplates().getAdditionalResources().stream()
+            .map(r -> r.getSource() + "=" + r.getDestination())
+            .collect(Collectors.toList()));
+        inputs.put("mavenRepositories", generatorProperties.getMavenProperties().getRepositories());
+
+        return hash(inputs);
+    }
+
+    private static String hash(Object value) throws JsonProcessingException {
+        final byte[] json = Json.mapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsBytes(value);
+        try {
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(json)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @SuppressWarnings("PMD.UnusedPrivateMethod")
@@ -336,7 +542,7 @@ public class DefaultProjectGenerator implements ProjectGenerator {
                     .connectorIdSupplier(step -> Optional.ofNullable(connectorIdMap.get(step)))
                     .build();
 
-                visitStep(stepContext);
+                visitSteps(stepContext);
             }
         }
 
@@ -346,16 +552,19 @@ public class DefaultProjectGenerator implements ProjectGenerator {
         return YAML_OBJECT_MAPPER.writeValueAsBytes(syndesisModel);
     }
 
-    private void visitStep(StepVisitorContext stepContext) {
-        StepVisitorFactory<?> factory = registry.get(stepContext.getStep().getStepKind());
-        StepVisitor visitor = factory.create();
-        Collection<io.syndesis.integration.model.steps.Step> steps = visitor.visit(stepContext);
-
-        if (steps != null) {
-            steps.forEach(stepContext.getGeneratorContext().getFlow()::addStep);
-        }
-        if (stepContext.hasNext()) {
-             visitStep(stepContext.next());
+    private void visitSteps(StepVisitorContext first) {
+        // A loop rather than a recursion so long flows don't need a deep stack,
+        // visitors taking the following steps (like filters) empty the remaining queue
+        StepVisitorContext stepContext = first;
+        while (stepContext != null) {
+            StepVisitorFactory<?> factory = registry.get(stepContext.getStep().getStepKind());
+            StepVisitor visitor = factory.create();
+            Collection<io.syndesis.integration.model.steps.Step> steps = visitor.visit(stepContext);
+
+            if (steps != null) {
+                steps.forEach(stepContext.getGeneratorContext().getFlow()::addStep);
+            }
+            stepContext = stepContext.hasNext() ? stepContext.next() : null;
         }
     }
 
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.project.converter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * A {@link PipedInputStream} fed by a producer running on another thread, which
+ * fails the reads when the producer failed instead of just ending the stream, and
+ * fails the writes when the reader stops reading instead of blocking the producer
+ * forever.
+ */
+class ProducerInputStream extends PipedInputStream {
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private volatile Throwable failure;
+
+    /* default */ ProducerInputStream() {
+        super(PIPE_SIZE);
+    }
+
+    /**
+     * @return the stream the producer writes to, its writes fail once this stream
+     *         is closed or when the reader didn't make room for the given time
+     */
+    /* default */ OutputStream connectProducer(long timeoutMillis) throws IOException {
+        final PipedOutputStream pipe = new PipedOutputStream(this);
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                awaitSpace(timeoutMillis);
+                pipe.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                // Only writes what fits so that the pipe itself never blocks
+                int written = 0;
+                while (written < len) {
+                    int count = Math.min(len - written, awaitSpace(timeoutMillis));
+                    pipe.write(b, off + written, count);
+                    written += count;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                pipe.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                pipe.close();
+            }
+        };
+    }
+
+    /**
+     * Records the failure of the producer, must be called before the producer
+     * closes its stream.
+     */
+    /* default */ void fail(Throwable cause) {
+        this.failure = cause;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        checkFailure();
+        int read = super.read();
+        notifyAll();
+        checkFailure();
+        return read;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        checkFailure();
+        int read = super.read(b, off, len);
+        notifyAll();
+        checkFailure();
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        synchronized (this) {
+            // Wakes the producer up so that its write fails right away
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until there is room in the pipe, or the reader closed it.
+     *
+     * @return the number of bytes that can be written without blocking
+     */
+    private synchronized int awaitSpace(long timeoutMillis) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        // Once closed by the reader the pipe looks empty and the write then fails
+        int space = buffer.length - available();
+        while (space == 0) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("The reader of the project didn't read it for " + timeoutMillis + " ms");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the project");
+            }
+            space = buffer.length - available();
+        }
+        return space;
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IOException("Failed to generate the project", cause);
+        }
+    }
+}
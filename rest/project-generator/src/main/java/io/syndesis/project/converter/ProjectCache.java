@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.project.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps generated artifacts so they are not generated again when their inputs
+ * did not change.  Whole project tars and extension binaries are kept on disk,
+ * the former in least recently used order up to a maximum count.  Smaller
+ * generated files are kept in memory.
+ */
+class ProjectCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProjectCache.class);
+
+    private static final int MAX_PROJECTS = 100;
+    private static final int MAX_FILES = 256;
+    private static final String TAR_SUFFIX = ".tar";
+
+    private final Path projects;
+    private final Path extensions;
+
+    private final Map<String, byte[]> files = Collections.synchronizedMap(new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_FILES;
+        }
+    });
+
+    @FunctionalInterface
+    interface Generator<T> {
+        T generate() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Writer {
+        void write(OutputStream os) throws IOException;
+    }
+
+    /* default */ ProjectCache(Path directory) throws IOException {
+        this.projects = Files.createDirectories(directory.resolve("projects"));
+        this.extensions = Files.createDirectories(directory.resolve("extensions"));
+    }
+
+    /**
+     * @return the cached project tar or null if there is none for the key
+     */
+    /* default */ InputStream getProject(String key) throws IOException {
+        Path file = projects.resolve(key + TAR_SUFFIX);
+        try {
+            InputStream is = Files.newInputStream(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return is;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the project tar to the cache.
+     *
+     * @return the written project tar
+     */
+    /* default */ InputStream putProject(String key, Writer writer) throws IOException {
+        Path file = projects.resolve(key + TAR_SUFFIX);
+        write(file, writer);
+        InputStream is = Files.newInputStream(file);
+        evictProjects();
+        return is;
+    }
+
+    /**
+     * @return the cached file content, generated first if not cached yet
+     */
+    /* default */ byte[] getFile(String key, Generator<byte[]> generator) throws IOException {
+        byte[] content = files.get(key);
+        if (content == null) {
+            content = generator.generate();
+            files.put(key, content);
+        }
+        return content;
+    }
+
+    /**
+     * @return the path of the cached extension binary, downloaded first if not cached yet
+     */
+    /* default */ Path getExtension(String id, Generator<InputStream> download) throws IOException {
+        Path file = extensions.resolve(id);
+        if (!Files.exists(file)) {
+            write(file, os -> {
+                try (InputStream is = download.generate()) {
+                    if (is == null) {
+                        throw new IOException("No binary found for extension " + id);
+                    }
+                    IOUtils.copy(is, os);
+                }
+            });
+        }
+        return file;
+    }
+
+    private static void write(Path file, Writer writer) throws IOException {
+        // Write to a temporary file first so that readers never see a partial file
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                writer.write(os);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void evictProjects() throws IOException {
+        List<Path> tars;
+        try (Stream<Path> paths = Files.list(projects)) {
+            tars = paths.filter(p -> p.getFileName().toString().endsWith(TAR_SUFFIX))
+                .sorted(Comparator.comparing(ProjectCache::lastModified).reversed())
+                .collect(Collectors.toList());
+        }
+        for (Path tar : tars.subList(Math.min(MAX_PROJECTS, tars.size()), tars.size())) {
+            LOG.debug("Evicting cached project {}", tar);
+            Files.deleteIfExists(tar);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
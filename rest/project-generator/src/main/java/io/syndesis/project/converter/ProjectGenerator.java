@@ -18,6 +18,7 @@ package io.syndesis.project.converter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
 import io.syndesis.model.integration.Integration;
 
@@ -35,4 +36,14 @@ public interface ProjectGenerator {
     InputStream generate(Integration integration) throws IOException;
 
     byte[] generatePom(Integration integration) throws IOException;
+
+    /**
+     * Generate the files configuring the integration on a prebuilt runtime: the flow,
+     * the application properties and the resources the flow refers to.
+     * @param integration the integration
+     * @return the content of the files keyed by file name
+     *
+     * @throws IOException if generating fails
+     */
+    Map<String, byte[]> generateConfiguration(Integration integration) throws IOException;
 }
@@ -28,6 +28,27 @@ public class ProjectGeneratorProperties {
     private Boolean secretMaskingEnabled = false;
     private String syndesisExtensionPath = "extensions";
 
+    /**
+     * Directory where generated projects are cached, no caching if not set.
+     */
+    private String cacheDirectory;
+
+    /**
+     * Number of threads writing the generated projects.
+     */
+    private int threads = 4;
+
+    /**
+     * Number of threads resolving the connector artifacts.
+     */
+    private int resolverThreads = 4;
+
+    /**
+     * Seconds a project writer waits for its reader to take some of the project
+     * before giving up.
+     */
+    private int writeTimeout = 300;
+
     /**
      * Templates configuration.
      */
@@ -59,6 +80,38 @@ public class ProjectGeneratorProperties {
         this.syndesisExtensionPath = syndesisExtensionPath;
     }
 
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getResolverThreads() {
+        return resolverThreads;
+    }
+
+    public void setResolverThreads(int resolverThreads) {
+        this.resolverThreads = resolverThreads;
+    }
+
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
     public Templates getTemplates() {
         return templates;
     }
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import io.syndesis.integration.model.steps.ChildSteps;
 import io.syndesis.integration.model.steps.Filter;
 import io.syndesis.model.filter.FilterStep;
 import io.syndesis.model.integration.Step;
@@ -31,7 +32,7 @@ public abstract class FilterStepVisitor implements StepVisitor {
     public Collection<io.syndesis.integration.model.steps.Step> visit(StepVisitorContext stepContext) {
         Step step = stepContext.getStep();
         if (step instanceof FilterStep && step.getStepKind().equals(getStepKind())) {
-            Filter filter = createFilter((FilterStep) step);
+            ChildSteps<?> filter = createFilter((FilterStep) step);
             List<io.syndesis.integration.model.steps.Step> steps = new ArrayList<>();
             while (stepContext.hasNext()) {
                 steps.addAll(visit(stepContext.next()));
@@ -47,7 +48,7 @@ public abstract class FilterStepVisitor implements StepVisitor {
         return visitor.visit(stepContext);
     }
 
-    private Filter createFilter(FilterStep s) {
+    protected ChildSteps<?> createFilter(FilterStep s) {
         Filter ret = new Filter();
         ret.setExpression(s.getFilterExpression());
         return ret;
@@ -15,6 +15,14 @@
  */
 package io.syndesis.project.converter.visitor;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.syndesis.integration.model.steps.ChildSteps;
+import io.syndesis.integration.model.steps.RuleFilter;
+import io.syndesis.model.filter.FilterRule;
+import io.syndesis.model.filter.FilterStep;
 import io.syndesis.model.filter.RuleFilterStep;
 
 /**
@@ -34,6 +42,29 @@ public class RuleFilterStepVisitor extends FilterStepVisitor {
         }
     }
 
+    /**
+     * Emits the rules as they are so that the runtime evaluates them directly,
+     * instead of through the simple expression they translate to.
+     */
+    @Override
+    protected ChildSteps<?> createFilter(FilterStep s) {
+        RuleFilterStep step = (RuleFilterStep) s;
+        Map<String, String> props = step.getConfiguredProperties();
+        if (props.isEmpty()) {
+            throw new IllegalStateException("No step properties defined for rule filter step");
+        }
+        List<FilterRule> rules = step.extractRules(props.get("rules"));
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalStateException(String.format("No rules defined in step properties %s for rule filter step", props));
+        }
+
+        RuleFilter ret = new RuleFilter(step.getPredicate(props.get("predicate")).name().toLowerCase(Locale.US));
+        for (FilterRule rule : rules) {
+            ret.rule(rule.getPath(), rule.getOp(), rule.getValue());
+        }
+        return ret;
+    }
+
     @Override
     protected String getStepKind() {
         return RuleFilterStep.STEP_KIND;
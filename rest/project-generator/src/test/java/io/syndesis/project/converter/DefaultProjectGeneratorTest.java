@@ -77,7 +77,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(Parameterized.class)
@@ -580,6 +583,96 @@ public class DefaultProjectGeneratorTest {
         assertThat(Files.exists(runtimeDir.resolve("extensions/my-extension-3.jar")));
     }
 
+    @Test
+    public void testCachedProject() throws Exception {
+        Step step = new SimpleStep.Builder()
+            .stepKind("extension")
+            .extension(new Extension.Builder()
+                .extensionId("my-extension-1")
+                .build()
+            )
+            .configuredProperties(map("key-1", "val-1"))
+            .action(new ExtensionAction.Builder()
+                .descriptor(new ExtensionDescriptor.Builder()
+                    .kind(ExtensionAction.Kind.ENDPOINT)
+                    .entrypoint("direct:extension")
+                    .build()
+                ).build())
+            .build();
+
+        Integration integration = new Integration.Builder()
+            .id("test-integration")
+            .name("Test Integration")
+            .steps(Collections.singletonList(step))
+            .build();
+
+        ProjectGeneratorProperties generatorProperties = new ProjectGeneratorProperties(mavenProperties);
+        generatorProperties.getTemplates().setOverridePath(this.basePath);
+        generatorProperties.getTemplates().getAdditionalResources().addAll(this.additionalResources);
+        generatorProperties.setCacheDirectory(testFolder.newFolder("cache").getAbsolutePath());
+
+        final DataManager dataManager = mock(DataManager.class);
+        final ExtensionDataManager extensionDataManager = mock(ExtensionDataManager.class);
+        when(extensionDataManager.getInstalledPhysicalId("my-extension-1")).thenReturn("installed-1");
+        when(extensionDataManager.getExtensionBinaryFile("my-extension-1"))
+            .thenAnswer(invocation -> IOUtils.toInputStream("my-extension-1", StandardCharsets.UTF_8));
+
+        final ProjectGenerator generator = new DefaultProjectGenerator(generatorProperties, new ConnectorCatalog(CATALOG_PROPERTIES), registry, dataManager, Optional.of(extensionDataManager));
+
+        final byte[] generated = readFully(generator.generate(integration));
+        final byte[] cached = readFully(generator.generate(integration));
+        assertThat(cached).isEqualTo(generated);
+        verify(extensionDataManager, times(1)).getExtensionBinaryFile("my-extension-1");
+
+        // A changed integration is generated again, but reuses the extension binary
+        final byte[] renamed = readFully(generator.generate(new Integration.Builder().createFrom(integration).name("Renamed Integration").build()));
+        assertThat(renamed).isNotEqualTo(generated);
+        verify(extensionDataManager, times(1)).getExtensionBinaryFile("my-extension-1");
+
+        // A new version of the extension changes the project
+        when(extensionDataManager.getInstalledPhysicalId("my-extension-1")).thenReturn("installed-2");
+        readFully(generator.generate(integration));
+        verify(extensionDataManager, times(2)).getExtensionBinaryFile("my-extension-1");
+    }
+
+    @Test
+    public void testGenerationFailureIsPropagated() throws Exception {
+        Step step = new SimpleStep.Builder()
+            .stepKind("extension")
+            .extension(new Extension.Builder()
+                .extensionId("missing-extension")
+                .build()
+            )
+            .action(new ExtensionAction.Builder()
+                .descriptor(new ExtensionDescriptor.Builder()
+                    .kind(ExtensionAction.Kind.ENDPOINT)
+                    .entrypoint("direct:extension")
+                    .build()
+                ).build())
+            .build();
+
+        Integration integration = new Integration.Builder()
+            .id("test-integration")
+            .name("Test Integration")
+            .steps(Collections.singletonList(step))
+            .build();
+
+        ProjectGeneratorProperties generatorProperties = new ProjectGeneratorProperties(mavenProperties);
+        generatorProperties.getTemplates().setOverridePath(this.basePath);
+
+        // The binary of the extension can't be found
+        final ExtensionDataManager extensionDataManager = mock(ExtensionDataManager.class);
+
+        try (DefaultProjectGenerator generator = new DefaultProjectGenerator(generatorProperties, new ConnectorCatalog(CATALOG_PROPERTIES), registry, mock(DataManager.class), Optional.of(extensionDataManager));
+             InputStream is = generator.generate(integration)) {
+
+            assertThatThrownBy(() -> IOUtils.toByteArray(is))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Failed to generate the project");
+            assertThat(generator.getFailedGenerations()).isEqualTo(1);
+        }
+    }
+
     // ************************************************
     // Helpers
     // ************************************************
@@ -627,6 +720,12 @@ public class DefaultProjectGeneratorTest {
         }
     }
 
+    private static byte[] readFully(InputStream is) throws IOException {
+        try (InputStream in = is) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
     private void assertFileContents(ProjectGeneratorProperties generatorProperties, Path actualFilePath, String expectedFileName) throws URISyntaxException, IOException {
         String overridePath = generatorProperties.getTemplates().getOverridePath();
         URL resource = null;
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.project.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProducerInputStreamTest {
+
+    private static final int PROJECT_SIZE = 1024 * 1024;
+
+    @Test
+    public void shouldPassTheProducedBytesToTheReader() throws Exception {
+        final byte[] project = new byte[PROJECT_SIZE];
+        new Random(1).nextBytes(project);
+
+        final ProducerInputStream is = new ProducerInputStream();
+        final OutputStream os = is.connectProducer(TimeUnit.MINUTES.toMillis(1));
+        final CompletableFuture<Void> producer = produce(os, project);
+
+        assertThat(IOUtils.toByteArray(is)).isEqualTo(project);
+        producer.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldFailTheProducerOnceTheReaderClosed() throws Exception {
+        final ProducerInputStream is = new ProducerInputStream();
+        final OutputStream os = is.connectProducer(TimeUnit.MINUTES.toMillis(1));
+        final CompletableFuture<Void> producer = produce(os, new byte[PROJECT_SIZE]);
+
+        // The producer fills the pipe and waits for the reader, which gives up
+        assertThat(is.read(new byte[1024])).isPositive();
+        is.close();
+
+        assertThatThrownBy(() -> producer.get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    public void shouldFailTheProducerWhenTheReaderStalls() throws Exception {
+        final ProducerInputStream is = new ProducerInputStream();
+        final OutputStream os = is.connectProducer(100);
+
+        assertThatThrownBy(() -> os.write(new byte[PROJECT_SIZE]))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("didn't read it for 100 ms");
+    }
+
+    private static CompletableFuture<Void> produce(OutputStream os, byte[] project) {
+        return CompletableFuture.runAsync(() -> {
+            try (OutputStream out = os) {
+                out.write(project);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
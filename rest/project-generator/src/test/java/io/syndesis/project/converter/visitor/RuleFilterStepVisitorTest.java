@@ -19,10 +19,13 @@ package io.syndesis.project.converter.visitor;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import io.syndesis.integration.model.steps.RuleFilter;
 import io.syndesis.model.filter.FilterPredicate;
 import io.syndesis.model.filter.RuleFilterStep;
 import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.Assert.assertEquals;
 
 public class RuleFilterStepVisitorTest {
@@ -42,4 +45,23 @@ public class RuleFilterStepVisitorTest {
         assertEquals("${body.person.name} == 'Ioannis' && ${body.person.favoriteDrinks} contains 'Gin'", step.getFilterExpression());
     }
 
+    @Test
+    public void createRuleFilter() throws Exception {
+        Map<String, String> props = new ConcurrentHashMap<>();
+        props.put("predicate", FilterPredicate.AND.toString());
+        props.put("rules","[ { \"path\": \"person.name\", \"op\": \"==\", \"value\": \"Ioannis\"}, " +
+                          "  { \"path\": \"person.favoriteDrinks\", \"op\": \"contains\", \"value\": \"Gin\" } ]");
+        RuleFilterStep step = new RuleFilterStep.Builder()
+            .id("1")
+            .configuredProperties(props)
+            .build();
+
+        RuleFilter filter = (RuleFilter) new RuleFilterStepVisitor().createFilter(step);
+
+        assertThat(filter.getPredicate()).isEqualTo(RuleFilter.AND);
+        assertThat(filter.getRules()).extracting("path", "op", "value").containsExactly(
+            tuple("person.name", "==", "Ioannis"),
+            tuple("person.favoriteDrinks", "contains", "Gin"));
+    }
+
 }
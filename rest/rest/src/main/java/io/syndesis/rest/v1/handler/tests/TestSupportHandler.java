@@ -16,6 +16,7 @@
 package io.syndesis.rest.v1.handler.tests;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -75,9 +76,7 @@ public class TestSupportHandler {
     public void restoreDB(ModelData<?>... data) {
         LOG.warn("user {} is restoring db state", context.getRemoteUser());
         deleteAllDBEntities();
-        for (ModelData<?> modelData : data) {
-            dataMgr.store(modelData);
-        }
+        dataMgr.storeAll(Arrays.asList(data));
     }
 
     @GET
@@ -15,6 +15,10 @@
  */
 package io.syndesis.runtime;
 
+import java.util.Arrays;
+
+import io.syndesis.core.EventBus;
+import io.syndesis.jsondb.impl.Index;
 import io.syndesis.jsondb.impl.SqlJsonDB;
 import org.skife.jdbi.v2.DBI;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,8 +34,15 @@ public class DataStoreConfiguration {
     @Bean
     @Autowired
     @SuppressWarnings("PMD.EmptyCatchBlock")
-    public SqlJsonDB realTimeDB(DBI dbi) {
-        SqlJsonDB jsondb = new SqlJsonDB(dbi, null);
+    public SqlJsonDB realTimeDB(DBI dbi, EventBus eventBus) {
+        // The jsondb change events let the DataManager invalidate its caches.
+        // Properties looked up via DataManager.fetchIdsByPropertyValue are indexed.
+        SqlJsonDB jsondb = new SqlJsonDB(dbi, eventBus, Arrays.asList(
+            Index.of("/connections", "name"),
+            Index.of("/integrations", "name"),
+            Index.of("/extensions", "extensionId"),
+            Index.of("/extensions", "status")
+        ));
         try {
             jsondb.createTables();
         } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception ignore) {
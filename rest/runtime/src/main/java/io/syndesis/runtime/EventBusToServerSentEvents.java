@@ -54,6 +54,14 @@ public class EventBusToServerSentEvents implements UndertowDeploymentInfoCustomi
         this.eventReservationsHandler = eventReservationsHandler;
     }
 
+    /**
+     * The jsondb-updated and jsondb-deleted events carry raw JsonDB paths used for
+     * cache invalidation, they are not meant for UI clients.
+     */
+    protected static boolean isInternalEvent(String type) {
+        return "jsondb-updated".equals(type) || "jsondb-deleted".equals(type);
+    }
+
     public class EventBusHandler implements ServerSentEventConnectionCallback {
 
         @Override
@@ -70,6 +78,9 @@ public class EventBusToServerSentEvents implements UndertowDeploymentInfoCustomi
             connection.send("connected", "message", null, null);
             connection.setKeepAliveTime(25*1000);
             bus.subscribe(subscriptionId, (type, data)->{
+                if( isInternalEvent(type) ) {
+                    return;
+                }
                 if( connection.isOpen() ) {
                     connection.send(data, type, null, null);
                 } else {
@@ -99,6 +110,29 @@ public class EventBusToServerSentEvents implements UndertowDeploymentInfoCustomi
     }
 
     protected boolean reservationCheck(HttpServerExchange exchange) {
+        corsCheck(exchange);
+
+        String uri = exchange.getRequestURI();
+        if (uri.indexOf(path + "/") != 0) {
+            exchange.setStatusCode(404);
+            return false;
+        }
+
+        final String subscriptionId = uri.substring(path.length() + 1);
+        if (subscriptionId.isEmpty()) {
+            exchange.setStatusCode(404);
+            return false;
+        }
+
+        EventReservationsHandler.Reservation reservation = eventReservationsHandler.existsReservation(subscriptionId);
+        if (reservation == null) {
+            exchange.setStatusCode(404);
+            return false;
+        }
+        return true;
+    }
+
+    protected void corsCheck(HttpServerExchange exchange) {
         HeaderMap requestHeaders = exchange.getRequestHeaders();
         String origin = requestHeaders.getFirst(CorsHeaders.ORIGIN);
         if (cors.getAllowedOrigins().contains("*") || cors.getAllowedOrigins().contains(origin)) {
@@ -120,24 +154,5 @@ public class EventBusToServerSentEvents implements UndertowDeploymentInfoCustomi
                 responseHeaders.put(new HttpString(CorsHeaders.ACCESS_CONTROL_ALLOW_METHODS), value);
             }
         }
-
-        String uri = exchange.getRequestURI();
-        if (uri.indexOf(path + "/") != 0) {
-            exchange.setStatusCode(404);
-            return false;
-        }
-
-        final String subscriptionId = uri.substring(path.length() + 1);
-        if (subscriptionId.isEmpty()) {
-            exchange.setStatusCode(404);
-            return false;
-        }
-
-        EventReservationsHandler.Reservation reservation = eventReservationsHandler.existsReservation(subscriptionId);
-        if (reservation == null) {
-            exchange.setStatusCode(404);
-            return false;
-        }
-        return true;
     }
 }
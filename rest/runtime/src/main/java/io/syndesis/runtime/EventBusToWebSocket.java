@@ -88,6 +88,9 @@ public class EventBusToWebSocket extends EventBusToServerSentEvents {
             connection.send("connected", "message", null, null);
             connection.setKeepAliveTime(25*1000);
             bus.subscribe(subscriptionId, (type, data) -> {
+                if (isInternalEvent(type)) {
+                    return;
+                }
                 if (connection.isOpen()) {
                     connection.send(data, type, null, null);
                 } else {
@@ -114,6 +117,9 @@ public class EventBusToWebSocket extends EventBusToServerSentEvents {
             LOG.debug("Principal is: {}", reservation.getPrincipal());
             send(channel, "message", "connected");
             bus.subscribe(subscriptionId, (type, data) -> {
+                if (isInternalEvent(type)) {
+                    return;
+                }
                 if (channel.isOpen()) {
                     send(channel, type, data);
                 } else {
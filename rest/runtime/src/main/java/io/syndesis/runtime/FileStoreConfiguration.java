@@ -15,10 +15,13 @@
  */
 package io.syndesis.runtime;
 
+import java.nio.file.Paths;
+
 import io.syndesis.dao.extension.ExtensionDataAccessObject;
 import io.syndesis.filestore.impl.SqlFileStore;
 import org.skife.jdbi.v2.DBI;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -32,8 +35,10 @@ public class FileStoreConfiguration {
 
     @Bean(initMethod = "init")
     @Autowired
-    public ExtensionDataAccessObject fileStore(DBI dbi) {
-        return new SqlFileStore(dbi);
+    public ExtensionDataAccessObject fileStore(DBI dbi,
+                                               @Value("${features.filestore.cache-directory:${java.io.tmpdir}/syndesis-filestore}") String cacheDirectory,
+                                               @Value("${features.filestore.cache-max-size:" + SqlFileStore.DEFAULT_MAX_CACHE_SIZE + "}") long cacheMaxSize) {
+        return new SqlFileStore(dbi, Paths.get(cacheDirectory), cacheMaxSize);
     }
 
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.runtime;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.syndesis.core.EventBus;
+import io.syndesis.core.Json;
+import io.syndesis.core.SyndesisServerException;
+import io.syndesis.jsondb.JsonDB;
+import io.syndesis.rest.v1.handler.events.EventReservationsHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import io.undertow.server.handlers.sse.ServerSentEventConnectionCallback;
+import io.undertow.server.handlers.sse.ServerSentEventHandler;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streams the changes of a JsonDB path as Server Sent Events, in the style of the
+ * Firebase REST API: a GET of "/api/v1/jsondb/{path}.json" with an
+ * {@code Accept: text/event-stream} header first receives a {@code put} event
+ * holding the value at the path, followed by a {@code put} event for every
+ * subtree changed under it.  The event data is a json object like
+ * {@code {"path":"/:1","data":{...}}} where the path is relative to the
+ * subscribed path and the data is null when the subtree was deleted.
+ *
+ * Since an EventSource cannot send headers, the stream must be reserved at
+ * "/api/v1/event/reservations" and the reservation passed in the
+ * {@code subscription} query parameter.
+ *
+ * The change events only queue the changed paths of each connection, the values
+ * are read and sent by a pool of sender threads so that neither the database nor
+ * slow clients hold up the writes.  A path changed several times before it is
+ * sent is sent once, with its latest value.
+ */
+@Component
+@ConditionalOnProperty(value = "endpoints.jsondb.enabled")
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class JsonDBToServerSentEvents extends EventBusToServerSentEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonDBToServerSentEvents.class);
+
+    public static final String DEFAULT_PATH = "/api/v1/jsondb";
+    private static final String JSON_SUFFIX = ".json";
+    private static final String EVENT_STREAM = "text/event-stream";
+    private static final int SENDER_THREADS = 4;
+
+    private final JsonDB jsondb;
+    private final ExecutorService sender;
+
+    @Autowired
+    public JsonDBToServerSentEvents(SyndesisCorsConfiguration cors, EventBus bus, EventReservationsHandler eventReservationsHandler, JsonDB jsondb) {
+        super(cors, bus, eventReservationsHandler);
+        this.jsondb = jsondb;
+        path = DEFAULT_PATH;
+
+        AtomicInteger count = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(SENDER_THREADS, r -> {
+            Thread thread = new Thread(r, "jsondb-sse-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.shutdownNow();
+    }
+
+    public class JsonDBHandler implements ServerSentEventConnectionCallback {
+        private final String subscriptionId;
+        private final String subscribedPath;
+
+        // Paths changed but not sent yet, in order, guarded by itself
+        private final Set<String> pendingPaths = new LinkedHashSet<>();
+        // Whether a sender thread is sending the pending paths, guarded by pendingPaths
+        private boolean sending;
+
+        public JsonDBHandler(String subscriptionId, String subscribedPath) {
+            this.subscriptionId = subscriptionId;
+            this.subscribedPath = subscribedPath;
+        }
+
+        @Override
+        public void connected(ServerSentEventConnection connection, String lastEventId) {
+            connection.setKeepAliveTime(25*1000);
+            connection.addCloseTask(c -> bus.unsubscribe(subscriptionId));
+
+            // Subscribe before queuing the initial value so no change gets lost, the
+            // changes queued before it are sent along with it.
+            bus.subscribe(subscriptionId, (type, data)->{
+                if( !connection.isOpen() ) {
+                    bus.unsubscribe(subscriptionId);
+                    return;
+                }
+                if( !"jsondb-updated".equals(type) && !"jsondb-deleted".equals(type) ) {
+                    return;
+                }
+                String changedPath = relativeChangePath(subscribedPath, data);
+                if( changedPath!=null ) {
+                    queuePut(connection, changedPath);
+                }
+            });
+            queuePut(connection, "/");
+        }
+
+        private void queuePut(ServerSentEventConnection connection, String changedPath) {
+            synchronized (pendingPaths) {
+                if( "/".equals(changedPath) ) {
+                    // The whole value is sent, which covers all the other changes
+                    pendingPaths.clear();
+                } else if( pendingPaths.contains("/") ) {
+                    return;
+                }
+                pendingPaths.add(changedPath);
+                if( sending ) {
+                    return;
+                }
+                sending = true;
+            }
+            try {
+                sender.execute(() -> sendPending(connection));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Sender shut down, dropping the changes of {}", subscriptionId, e);
+                synchronized (pendingPaths) {
+                    pendingPaths.clear();
+                    sending = false;
+                }
+            }
+        }
+
+        /**
+         * Sends the pending paths until there are none left, on a sender thread.
+         */
+        private void sendPending(ServerSentEventConnection connection) {
+            while( true ) {
+                List<String> paths;
+                synchronized (pendingPaths) {
+                    if( pendingPaths.isEmpty() || !connection.isOpen() ) {
+                        pendingPaths.clear();
+                        sending = false;
+                        return;
+                    }
+                    paths = new ArrayList<>(pendingPaths);
+                    pendingPaths.clear();
+                }
+                for (String changedPath : paths) {
+                    try {
+                        sendPut(connection, changedPath);
+                    } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") RuntimeException e) {
+                        LOG.warn("Could not send the change of {} to {}", changedPath, subscriptionId, e);
+                    }
+                }
+            }
+        }
+
+        private void sendPut(ServerSentEventConnection connection, String changedPath) {
+            String absolutePath;
+            if( "/".equals(changedPath) ) {
+                absolutePath = subscribedPath;
+            } else if( "/".equals(subscribedPath) ) {
+                absolutePath = changedPath;
+            } else {
+                absolutePath = subscribedPath + changedPath;
+            }
+            String value = jsondb.getAsString(absolutePath);
+            try {
+                String message = "{\"path\":" + Json.mapper().writeValueAsString(changedPath) + ",\"data\":" + value + "}";
+                connection.send(message, "put", null, null);
+            } catch (JsonProcessingException e) {
+                throw SyndesisServerException.launderThrowable(e);
+            }
+        }
+    }
+
+    @Override
+    public void customize(DeploymentInfo deploymentInfo) {
+        deploymentInfo.addInitialHandlerChainWrapper(handler -> {
+                return exchange -> {
+                    if( !isEventStreamRequest(exchange) ) {
+                        handler.handleRequest(exchange);
+                        return;
+                    }
+
+                    corsCheck(exchange);
+                    Deque<String> subscription = exchange.getQueryParameters().get("subscription");
+                    EventReservationsHandler.Reservation reservation = null;
+                    if( subscription!=null && !subscription.isEmpty() ) {
+                        reservation = eventReservationsHandler.claimReservation(subscription.getFirst());
+                    }
+                    if( reservation==null ) {
+                        exchange.setStatusCode(404);
+                        exchange.endExchange();
+                        return;
+                    }
+                    LOG.debug("Principal is: {}", reservation.getPrincipal());
+
+                    String requestPath = exchange.getRequestPath();
+                    String subscribedPath = normalize(requestPath.substring(path.length(), requestPath.length() - JSON_SUFFIX.length()));
+                    new ServerSentEventHandler(new JsonDBHandler(subscription.getFirst(), subscribedPath)).handleRequest(exchange);
+                };
+            }
+        );
+    }
+
+    private boolean isEventStreamRequest(HttpServerExchange exchange) {
+        String requestPath = exchange.getRequestPath();
+        if( !Methods.GET.equals(exchange.getRequestMethod())
+            || !requestPath.startsWith(path + "/")
+            || !requestPath.endsWith(JSON_SUFFIX) ) {
+            return false;
+        }
+        String accept = exchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+        return accept!=null && accept.contains(EVENT_STREAM);
+    }
+
+    /**
+     * @return the path of the change relative to the subscribed path, {@code /} when the
+     * whole subscribed value changed or null when the change is not visible from the
+     * subscribed path.
+     */
+    /* default */ static String relativeChangePath(String subscribedPath, String changedPath) {
+        String changed = normalize(changedPath);
+        if( "/".equals(subscribedPath) ) {
+            return changed;
+        }
+        if( "/".equals(changed) || changed.equals(subscribedPath) || subscribedPath.startsWith(changed + "/") ) {
+            return "/";
+        }
+        if( changed.startsWith(subscribedPath + "/") ) {
+            return changed.substring(subscribedPath.length());
+        }
+        return null;
+    }
+
+    /**
+     * Converts a path to the {@code /a/b} form used by the JsonDB change events.
+     */
+    /* default */ static String normalize(String path) {
+        int start = 0;
+        int end = path.length();
+        while( start < end && path.charAt(start) == '/' ) {
+            start++;
+        }
+        while( end > start && path.charAt(end - 1) == '/' ) {
+            end--;
+        }
+        return "/" + path.substring(start, end);
+    }
+}
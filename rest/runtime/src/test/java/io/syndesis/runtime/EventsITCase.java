@@ -97,6 +97,41 @@ public class EventsITCase extends BaseITCase {
     }
 
 
+    @Test
+    public void sseJsonDBEventsWithToken() throws Exception {
+        jsondb.set("/sse-test", "{\"a\":1}");
+
+        ResponseEntity<EventMessage> r1 = post("/api/v1/event/reservations", null, EventMessage.class);
+        String uuid = (String) r1.getBody().getData().get();
+
+        URI uri = resolveURI(JsonDBToServerSentEvents.DEFAULT_PATH + "/sse-test.json?subscription=" + uuid);
+
+        EventHandler handler = recorder(mock(EventHandler.class), EventHandler.class);
+        List<Recordings.Invocation> invocations = recordedInvocations(handler);
+        CountDownLatch countDownLatch = resetRecorderLatch(handler, 2);
+
+        try (EventSource eventSource = new EventSource.Builder(handler, uri).build()) {
+            eventSource.start();
+
+            assertThat(countDownLatch.await(1000, TimeUnit.SECONDS)).isTrue();
+            reorderEventSourceInvocations(invocations);
+
+            // We first get the current value at the path.
+            assertThat(invocations.get(1).getArgs()[0]).isEqualTo("put");
+            assertThat(((MessageEvent) invocations.get(1).getArgs()[1]).getData()).isEqualTo("{\"path\":\"/\",\"data\":{\"a\":1}}");
+
+            // Then only the changed subtrees.
+            invocations.clear();
+            countDownLatch = resetRecorderLatch(handler, 1);
+            jsondb.set("/other-sse-test", "{\"b\":2}");
+            jsondb.set("/sse-test/b", "2");
+
+            assertThat(countDownLatch.await(1000, TimeUnit.SECONDS)).isTrue();
+            assertThat(invocations.get(0).getArgs()[0]).isEqualTo("put");
+            assertThat(((MessageEvent) invocations.get(0).getArgs()[1]).getData()).isEqualTo("{\"path\":\"/b\",\"data\":2}");
+        }
+    }
+
     private void reorderEventSourceInvocations(List<Invocation> invocations) {
         // The EventSource is using a thread pool to emmit events.. so we get non-deterministic results.
         // lets reorder stuff so that the onOpen is the first event.
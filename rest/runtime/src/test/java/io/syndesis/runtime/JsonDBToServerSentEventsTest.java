@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.runtime;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import io.syndesis.core.EventBus;
+import io.syndesis.jsondb.impl.SqlJsonDB;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JsonDBToServerSentEventsTest {
+
+    @Test
+    public void shouldNormalizePaths() {
+        assertThat(JsonDBToServerSentEvents.normalize("")).isEqualTo("/");
+        assertThat(JsonDBToServerSentEvents.normalize("/")).isEqualTo("/");
+        assertThat(JsonDBToServerSentEvents.normalize("integrations/")).isEqualTo("/integrations");
+        assertThat(JsonDBToServerSentEvents.normalize("/integrations/:1")).isEqualTo("/integrations/:1");
+    }
+
+    @Test
+    public void shouldComputeChangePathsRelativeToSubscribedPath() {
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations", "/integrations/:1")).isEqualTo("/:1");
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations", "/integrations")).isEqualTo("/");
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations/:1", "/integrations")).isEqualTo("/");
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations", "/")).isEqualTo("/");
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/", "/integrations/:1")).isEqualTo("/integrations/:1");
+    }
+
+    @Test
+    public void shouldIgnoreChangesOutsideSubscribedPath() {
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations", "/connections/:1")).isNull();
+        assertThat(JsonDBToServerSentEvents.relativeChangePath("/integrations", "/integrationsOld")).isNull();
+    }
+
+    /**
+     * The client blocks every send until all the writes are done, the writes would
+     * never complete if they waited for the sends.
+     */
+    @Test(timeout = 30_000)
+    @SuppressWarnings("PMD.EmptyCatchBlock")
+    public void shouldNotBlockWritesOnSlowSubscribers() throws Exception {
+        EventBus bus = new SimpleEventBus();
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:sse;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        SqlJsonDB jsondb = new SqlJsonDB(new DBI(ds), bus);
+        try {
+            jsondb.dropTables();
+        } catch (@SuppressWarnings("PMD.AvoidCatchingGenericException") Exception ignore) {
+        }
+        jsondb.createTables();
+
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch writesDone = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        ServerSentEventConnection connection = mock(ServerSentEventConnection.class);
+        when(connection.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sending.countDown();
+            writesDone.await();
+            sent.add((String) invocation.getArguments()[0]);
+            return null;
+        }).when(connection).send(anyString(), eq("put"), anyString(), any(ServerSentEventConnection.EventCallback.class));
+
+        JsonDBToServerSentEvents events = new JsonDBToServerSentEvents(null, bus, null, jsondb);
+        try {
+            events.new JsonDBHandler("slow", "/test").connected(connection, null);
+            sending.await();
+
+            for (int i = 0; i < 10; i++) {
+                jsondb.set("/test/:1", "{\"count\":" + i + "}");
+            }
+            writesDone.countDown();
+
+            // The initial value, then the changes of the path coalesced in one put of the latest value
+            verify(connection, timeout(10_000).times(2)).send(anyString(), eq("put"), anyString(), any(ServerSentEventConnection.EventCallback.class));
+            assertThat(sent.get(1)).isEqualTo("{\"path\":\"/:1\",\"data\":{\"count\":9}}");
+        } finally {
+            events.stop();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import io.syndesis.integration.model.steps.Endpoint;
 import io.syndesis.integration.model.steps.Filter;
 import io.syndesis.integration.model.steps.Function;
 import io.syndesis.integration.model.steps.Log;
+import io.syndesis.integration.model.steps.RuleFilter;
 import io.syndesis.integration.model.steps.SetBody;
 import io.syndesis.integration.model.steps.SetHeaders;
 import io.syndesis.integration.model.steps.Split;
@@ -120,6 +121,12 @@ public class Flow extends DtoSupport {
         return step;
     }
 
+    public RuleFilter ruleFilter(String predicate) {
+        RuleFilter step = new RuleFilter(predicate);
+        addStep(step);
+        return step;
+    }
+
     public Choice choice() {
         Choice step = new Choice();
         addStep(step);
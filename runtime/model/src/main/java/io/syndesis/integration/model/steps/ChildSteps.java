@@ -70,6 +70,12 @@ public abstract class ChildSteps<T extends ChildSteps> extends Step {
         return step;
     }
 
+    public RuleFilter ruleFilter(String predicate) {
+        RuleFilter step = new RuleFilter(predicate);
+        addStep(step);
+        return step;
+    }
+
     public Choice choice() {
         Choice step = new Choice();
         addStep(step);
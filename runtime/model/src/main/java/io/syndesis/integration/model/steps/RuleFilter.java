@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Red Hat, Inc.
+ * <p>
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package io.syndesis.integration.model.steps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.google.auto.service.AutoService;
+
+/**
+ * If the message matches the rules, all of them or any of them depending on the
+ * predicate, then it invokes the child steps
+ */
+@AutoService(Step.class)
+@JsonPropertyOrder({"predicate", "rules", "steps"})
+public class RuleFilter extends ChildSteps<RuleFilter> {
+    public static final String KIND = "rule-filter";
+
+    public static final String AND = "and";
+    public static final String OR = "or";
+
+    private String predicate = OR;
+    private List<Rule> rules = new ArrayList<>();
+
+    public RuleFilter() {
+        super(KIND);
+    }
+
+    public RuleFilter(String predicate) {
+        super(KIND);
+
+        this.predicate = predicate;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleFilter: " + predicate + " " + rules + " => " + getSteps();
+    }
+
+    // DSL
+    //-------------------------------------------------------------------------
+    public RuleFilter rule(String path, String op, String value) {
+        rules.add(new Rule(path, op, value));
+        return this;
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public String getPredicate() {
+        return predicate;
+    }
+
+    public void setPredicate(String predicate) {
+        this.predicate = predicate;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Compares the value at a dot separated path of the message body with a value
+     */
+    @JsonPropertyOrder({"path", "op", "value"})
+    public static class Rule {
+        private String path;
+        private String op;
+        private String value;
+
+        public Rule() {
+            // used by jackson
+        }
+
+        public Rule(String path, String op, String value) {
+            this.path = path;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + op + " '" + value + "'";
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public String getOp() {
+            return op;
+        }
+
+        public void setOp(String op) {
+            this.op = op;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
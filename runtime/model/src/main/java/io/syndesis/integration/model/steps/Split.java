@@ -16,6 +16,7 @@
  */
 package io.syndesis.integration.model.steps;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.google.auto.service.AutoService;
 
@@ -23,11 +24,15 @@ import com.google.auto.service.AutoService;
  * Splits the payload into multiple messages
  */
 @AutoService(Step.class)
-@JsonPropertyOrder({"expression", "steps"})
+@JsonPropertyOrder({"expression", "parallel", "maxConcurrency", "streaming", "batchSize", "steps"})
 public class Split extends ChildSteps<Split> {
     public static final String KIND = "split";
 
     private String expression;
+    private Boolean parallel;
+    private Integer maxConcurrency;
+    private Boolean streaming;
+    private Integer batchSize;
 
     public Split() {
         super(KIND);
@@ -51,4 +56,55 @@ public class Split extends ChildSteps<Split> {
     public void setExpression(String expression) {
         this.expression = expression;
     }
+
+    /**
+     * Whether the child steps process the elements in parallel.
+     */
+    public Boolean getParallel() {
+        return parallel;
+    }
+
+    public void setParallel(Boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * The maximum number of elements processed at the same time when parallel.
+     */
+    public Integer getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(Integer maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Whether the elements are split off the body as they are read, instead of all
+     * at once.  When not set, simple array paths like {@code $.items[*]} are
+     * streamed.
+     */
+    public Boolean getStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(Boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * The number of elements grouped in a JSON array for each message, one by default.
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @JsonIgnore
+    public boolean isParallelEnabled() {
+        return parallel != null && parallel.booleanValue();
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Red Hat, Inc.
+ * <p>
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package io.syndesis.integration.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import io.syndesis.integration.model.steps.Step;
+
+/**
+ * The {@link StepHandler}s found on the classpath, loaded once and indexed by the
+ * class of the steps they handle.  The handlers are asked whether they can handle
+ * a step only the first time a step of that class is seen, so a handler must
+ * decide on the class of the step alone.
+ */
+public class StepHandlerRegistry {
+    private final List<StepHandler> handlers = new ArrayList<>();
+    private final Map<Class<?>, StepHandler> handlersByStepClass = new HashMap<>();
+
+    public StepHandlerRegistry(ClassLoader classLoader) {
+        for (StepHandler handler : ServiceLoader.load(StepHandler.class, classLoader)) {
+            handlers.add(handler);
+        }
+    }
+
+    /**
+     * @return the handler of the step
+     * @throws IllegalStateException if no handler can handle the step
+     */
+    public StepHandler get(Step step) {
+        StepHandler answer = handlersByStepClass.get(step.getClass());
+        if (answer == null) {
+            for (StepHandler handler : handlers) {
+                if (handler.canHandle(step)) {
+                    answer = handler;
+                    handlersByStepClass.put(step.getClass(), handler);
+                    break;
+                }
+            }
+        }
+        if (answer == null) {
+            throw new IllegalStateException("Unknown step kind: " + step + " of class: " + step.getClass().getName());
+        }
+        return answer;
+    }
+}
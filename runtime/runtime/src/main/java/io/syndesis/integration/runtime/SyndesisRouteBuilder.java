@@ -18,7 +18,7 @@ package io.syndesis.integration.runtime;
 
 import java.io.InputStream;
 import java.util.List;
-import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
 
 import io.syndesis.integration.model.Flow;
 import io.syndesis.integration.model.YamlHelpers;
@@ -41,6 +41,7 @@ public class SyndesisRouteBuilder extends RouteBuilder {
     private static final transient Logger LOG = LoggerFactory.getLogger(SyndesisRouteBuilder.class);
 
     private final String configurationUri;
+    private StepHandlerRegistry handlers;
 
     public SyndesisRouteBuilder(String configurationUri) {
         this.configurationUri = configurationUri;
@@ -56,8 +57,11 @@ public class SyndesisRouteBuilder extends RouteBuilder {
 
     @Override
     public void configure() throws Exception {
+        long configureStart = System.nanoTime();
         int flowIndex = 0;
-        for (Flow flow : loadModel().getFlows()) {
+        List<Flow> flows = loadModel().getFlows();
+        for (Flow flow : flows) {
+            long flowStart = System.nanoTime();
             getContext().setStreamCaching(true);
 
             if (flow.isTraceEnabled()) {
@@ -100,7 +104,10 @@ public class SyndesisRouteBuilder extends RouteBuilder {
                 LOG.info("Enabling single message mode so that only one message is consumed for Design Mode");
                 getContext().addRoutePolicyFactory(new SingleMessageRoutePolicyFactory());
             }
+
+            LOG.info("Built route {} of {} steps in {} ms", name, steps.size(), elapsedMillis(flowStart));
         }
+        LOG.info("Built {} routes in {} ms", flows.size(), elapsedMillis(configureStart));
     }
 
     public ProcessorDefinition addSteps(ProcessorDefinition route, Iterable<Step> steps) {
@@ -117,12 +124,13 @@ public class SyndesisRouteBuilder extends RouteBuilder {
             throw new IllegalArgumentException("You cannot use a " + item.getKind() + " step before you have started a flow with an endpoint or function!");
         }
 
-        for (StepHandler handler : ServiceLoader.load(StepHandler.class, getClass().getClassLoader())) {
-            if (handler.canHandle(item)) {
-                return handler.handle(item, route, this);
-            }
+        if (handlers == null) {
+            handlers = new StepHandlerRegistry(getClass().getClassLoader());
         }
+        return handlers.get(item).handle(item, route, this);
+    }
 
-        throw new IllegalStateException("Unknown step kind: " + item + " of class: " + item.getClass().getName());
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 }
@@ -18,14 +18,22 @@ import io.syndesis.integration.model.steps.Split;
 import io.syndesis.integration.model.steps.Step;
 import io.syndesis.integration.runtime.StepHandler;
 import io.syndesis.integration.runtime.SyndesisRouteBuilder;
+import io.syndesis.integration.runtime.util.BatchingExpression;
+import io.syndesis.integration.runtime.util.JsonArraySplitExpression;
 import io.syndesis.integration.runtime.util.JsonSimpleHelpers;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Expression;
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
 import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.SplitDefinition;
 import org.apache.camel.model.dataformat.JsonLibrary;
+import org.apache.camel.spi.ExecutorServiceManager;
 
 @AutoService(StepHandler.class)
 public class SplitHandler implements StepHandler<Split> {
+    private static final String THREAD_POOL_PROFILE_PREFIX = "syndesis-split-";
+
     @Override
     public boolean canHandle(Step step) {
         return step.getClass().equals(Split.class);
@@ -34,8 +42,77 @@ public class SplitHandler implements StepHandler<Split> {
     @Override
     public ProcessorDefinition handle(Split step, ProcessorDefinition route, SyndesisRouteBuilder routeBuilder) {
         CamelContext context = routeBuilder.getContext();
+        int batchSize = step.getBatchSize() == null ? 1 : step.getBatchSize();
+
+        JsonArraySplitExpression streaming = Boolean.FALSE.equals(step.getStreaming())
+            ? null
+            : JsonArraySplitExpression.forPath(step.getExpression());
+
         Expression expression = JsonSimpleHelpers.getMandatoryExpression(context, step, step.getExpression());
-        ProcessorDefinition split = route.split(expression).marshal().json(JsonLibrary.Jackson);
-        return routeBuilder.addSteps(split, step.getSteps());
+        if (batchSize != 1) {
+            expression = new BatchingExpression(expression, batchSize);
+        }
+
+        SplitDefinition split;
+        ProcessorDefinition steps;
+        if (streaming != null) {
+            // The elements come out of the body as JSON already, one batch at a time,
+            // bodies that aren't text or streams are split by the expression instead
+            split = route.split(streaming.withBatchSize(batchSize).withFallback(expression)).streaming();
+            steps = split;
+        } else {
+            split = route.split(expression);
+            if (Boolean.TRUE.equals(step.getStreaming())) {
+                split.streaming();
+            }
+            steps = split.marshal().json(JsonLibrary.Jackson);
+        }
+
+        if (step.isParallelEnabled()) {
+            // The results of the elements aren't aggregated, the split continues with
+            // the original message whether parallel or not
+            String profile = threadPoolProfile(context, step);
+            if (profile != null) {
+                split.parallelProcessing().executorServiceRef(profile);
+            }
+        }
+        return routeBuilder.addSteps(steps, step.getSteps());
+    }
+
+    /**
+     * Registers, if needed, the profile of the thread pools of the parallel splits
+     * with the given concurrency.  The pools are bounded, once their threads are busy
+     * and their queue is full the splitting thread processes the elements itself, so
+     * they have one thread less than the concurrency.  Being created by Camel, the
+     * pools are managed and their statistics exposed through JMX along those of the
+     * routes.
+     *
+     * @return the id of the profile, or {@code null} if the elements are processed
+     *         one at a time
+     */
+    private static String threadPoolProfile(CamelContext context, Split step) {
+        ExecutorServiceManager manager = context.getExecutorServiceManager();
+        Integer maxConcurrency = step.getMaxConcurrency();
+        if (maxConcurrency == null) {
+            maxConcurrency = manager.getDefaultThreadPoolProfile().getMaxPoolSize();
+        } else if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("The maximum concurrency must be at least 1 for step " + step);
+        }
+
+        if (maxConcurrency == 1) {
+            return null;
+        }
+
+        int threads = maxConcurrency - 1;
+        String id = THREAD_POOL_PROFILE_PREFIX + maxConcurrency;
+        if (manager.getThreadPoolProfile(id) == null) {
+            manager.registerThreadPoolProfile(new ThreadPoolProfileBuilder(id)
+                .poolSize(threads)
+                .maxPoolSize(threads)
+                .maxQueueSize(threads)
+                .rejectedPolicy(ThreadPoolRejectedPolicy.CallerRuns)
+                .build());
+        }
+        return id;
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.util.ObjectHelper;
+
+/**
+ * Groups the values of an expression in lists of a given size, the last list
+ * holding the remaining values.
+ */
+public final class BatchingExpression implements Expression {
+
+    private final Expression expression;
+    private final int batchSize;
+
+    public BatchingExpression(Expression expression, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, got: " + batchSize);
+        }
+        this.expression = expression;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public <T> T evaluate(Exchange exchange, Class<T> type) {
+        Iterator<?> values = ObjectHelper.createIterator(expression.evaluate(exchange, Object.class));
+        Iterator<List<Object>> batches = new Iterator<List<Object>>() {
+            @Override
+            public boolean hasNext() {
+                return values.hasNext();
+            }
+
+            @Override
+            public List<Object> next() {
+                if (!values.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Object> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && values.hasNext()) {
+                    batch.add(values.next());
+                }
+                return batch;
+            }
+        };
+        return type.cast(batches);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingExpression[" + expression + ", batchSize=" + batchSize + "]";
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.StreamCache;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+
+/**
+ * Splits the JSON array at a simple path, like {@code $.items[*]}, while reading
+ * the body with the streaming parser of Jackson.  The elements are copied token
+ * by token, numbers as they are written, to a JSON document of their own so that
+ * only the element being copied is held in memory, whatever the size of the body.
+ *
+ * When the value at the path is an object its values are the elements, when it is
+ * missing or a scalar there are no elements.  Elements can be grouped in batches,
+ * each batch then is a JSON array of elements.
+ *
+ * Only text, bytes, streams, stream caches and files are streamed.  Other bodies,
+ * like maps, lists or POJOs, are split with the fallback expression and the elements
+ * it returns are written as JSON, so that the output is the same for any body.
+ *
+ * Note that with stream caching, as enabled by the route builder, a stream body is
+ * cached before it reaches the split: memory then stays bounded only as long as the
+ * cache spools to disk, which the default stream caching strategy of Camel does for
+ * bodies larger than its spool threshold of 128 KB.
+ */
+public final class JsonArraySplitExpression implements Expression {
+
+    private static final Pattern ARRAY_PATH = Pattern.compile("\\$((?:\\.[A-Za-z_$][\\w$-]*|\\['[^']*'])*)\\[\\*]");
+    private static final Pattern PATH_SEGMENT = Pattern.compile("\\.([A-Za-z_$][\\w$-]*)|\\['([^']*)']");
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    private final String path;
+    private final String[] fields;
+    private final int batchSize;
+    private final Expression fallback;
+
+    private JsonArraySplitExpression(String path, String[] fields, int batchSize, Expression fallback) {
+        this.path = path;
+        this.fields = fields;
+        this.batchSize = batchSize;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @return the expression splitting the array at the given JsonPath expression,
+     * null if the expression isn't a simple path to an array.
+     */
+    public static JsonArraySplitExpression forPath(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        String trimmed = expression.trim();
+        Matcher matcher = ARRAY_PATH.matcher(trimmed);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<>();
+        Matcher segment = PATH_SEGMENT.matcher(matcher.group(1));
+        while (segment.find()) {
+            fields.add(segment.group(1) != null ? segment.group(1) : segment.group(2));
+        }
+        return new JsonArraySplitExpression(trimmed, fields.toArray(new String[fields.size()]), 1, null);
+    }
+
+    /**
+     * @return the same expression with the elements grouped in JSON arrays of the given size.
+     */
+    public JsonArraySplitExpression withBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, got: " + size);
+        }
+        return new JsonArraySplitExpression(path, fields, size, fallback);
+    }
+
+    /**
+     * @return the same expression splitting the bodies that can't be streamed with the
+     * given expression, which has to group the elements in batches of the same size.
+     */
+    public JsonArraySplitExpression withFallback(Expression expression) {
+        return new JsonArraySplitExpression(path, fields, batchSize, expression);
+    }
+
+    @Override
+    public <T> T evaluate(Exchange exchange, Class<T> type) {
+        Object body = exchange.getIn().getBody();
+        if (body != null && !isStreamable(body)) {
+            if (fallback == null) {
+                throw new RuntimeCamelException("Cannot stream a body of type " + body.getClass().getName() + " with " + path);
+            }
+            return type.cast(new JsonIterator(ObjectHelper.createIterator(fallback.evaluate(exchange, Object.class))));
+        }
+        try {
+            return type.cast(elements(exchange));
+        } catch (IOException e) {
+            throw new RuntimeCamelException("Cannot split the body with " + path, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JsonArraySplitExpression[" + path + (batchSize > 1 ? ", batchSize=" + batchSize : "") + "]";
+    }
+
+    private Iterator<byte[]> elements(Exchange exchange) throws IOException {
+        JsonParser parser = createParser(exchange);
+        if (parser == null) {
+            return Collections.emptyIterator();
+        }
+
+        JsonToken token = parser.nextToken();
+        for (String field : fields) {
+            token = moveToField(parser, token, field);
+        }
+        if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+            parser.close();
+            return Collections.emptyIterator();
+        }
+        return new ElementIterator(parser, token == JsonToken.START_OBJECT, batchSize);
+    }
+
+    private static boolean isStreamable(Object body) {
+        return body instanceof String
+            || body instanceof byte[]
+            || body instanceof InputStream
+            || body instanceof StreamCache
+            || body instanceof File;
+    }
+
+    private static JsonParser createParser(Exchange exchange) throws IOException {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof String) {
+            return FACTORY.createParser((String) body);
+        }
+        if (body instanceof byte[]) {
+            return FACTORY.createParser((byte[]) body);
+        }
+        InputStream stream = exchange.getIn().getBody(InputStream.class);
+        return stream == null ? null : FACTORY.createParser(stream);
+    }
+
+    /**
+     * Moves the parser from the start of an object to the value of one of its fields.
+     *
+     * @return the first token of the value, null if there is no such field
+     */
+    private static JsonToken moveToField(JsonParser parser, JsonToken current, String field) throws IOException {
+        if (current != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            JsonToken value = parser.nextToken();
+            if (field.equals(parser.getCurrentName())) {
+                return value;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the value at the current token of the parser, numbers as they are written.
+     */
+    private static void copyValue(JsonParser parser, JsonGenerator generator) throws IOException {
+        int depth = 0;
+        do {
+            switch (parser.getCurrentToken()) {
+                case START_OBJECT:
+                    generator.writeStartObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    generator.writeEndObject();
+                    depth--;
+                    break;
+                case START_ARRAY:
+                    generator.writeStartArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    generator.writeEndArray();
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    generator.writeFieldName(parser.getCurrentName());
+                    break;
+                case VALUE_STRING:
+                    generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    generator.writeNumber(parser.getText());
+                    break;
+                case VALUE_TRUE:
+                    generator.writeBoolean(true);
+                    break;
+                case VALUE_FALSE:
+                    generator.writeBoolean(false);
+                    break;
+                case VALUE_NULL:
+                    generator.writeNull();
+                    break;
+                default:
+                    generator.copyCurrentEvent(parser);
+                    break;
+            }
+        } while (depth > 0 && parser.nextToken() != null);
+    }
+
+    /**
+     * Writes the elements split by the fallback expression as JSON.
+     */
+    private static final class JsonIterator implements Iterator<byte[]>, Closeable {
+        private final Iterator<?> elements;
+
+        JsonIterator(Iterator<?> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return elements.hasNext();
+        }
+
+        @Override
+        public byte[] next() {
+            try {
+                return MAPPER.writeValueAsBytes(elements.next());
+            } catch (JsonProcessingException e) {
+                throw new RuntimeCamelException("Cannot write the element as JSON", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (elements instanceof Closeable) {
+                ((Closeable) elements).close();
+            }
+        }
+    }
+
+    /**
+     * Reads the elements one batch at a time, closes the parser once they are all
+     * read or when the splitter closes it.
+     */
+    private static final class ElementIterator implements Iterator<byte[]>, Closeable {
+        private final JsonParser parser;
+        private final boolean objectValues;
+        private final int batchSize;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private byte[] next;
+        private boolean ended;
+        private boolean done;
+
+        ElementIterator(JsonParser parser, boolean objectValues, int batchSize) {
+            this.parser = parser;
+            this.objectValues = objectValues;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    next = readNext();
+                } catch (IOException e) {
+                    close();
+                    throw new RuntimeCamelException("Cannot read the next element of the body", e);
+                }
+                if (next == null) {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] answer = next;
+            next = null;
+            return answer;
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            IOHelper.close(parser);
+        }
+
+        private byte[] readNext() throws IOException {
+            buffer.reset();
+            int count = 0;
+            while (count < batchSize && nextElement()) {
+                if (batchSize > 1) {
+                    buffer.write(count == 0 ? '[' : ',');
+                }
+                try (JsonGenerator generator = FACTORY.createGenerator(buffer)) {
+                    copyValue(parser, generator);
+                }
+                count++;
+            }
+            if (count == 0) {
+                return null;
+            }
+            if (batchSize > 1) {
+                buffer.write(']');
+            }
+            return buffer.toByteArray();
+        }
+
+        /**
+         * Moves the parser to the first token of the next element.
+         *
+         * @return false if all the elements are read
+         */
+        private boolean nextElement() throws IOException {
+            if (ended) {
+                return false;
+            }
+            JsonToken token = parser.nextToken();
+            if (objectValues && token == JsonToken.FIELD_NAME) {
+                token = parser.nextToken();
+            }
+            ended = token == null || token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT;
+            return !ended;
+        }
+    }
+}
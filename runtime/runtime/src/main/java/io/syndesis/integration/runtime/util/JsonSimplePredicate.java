@@ -13,74 +13,92 @@
  */
 package io.syndesis.integration.runtime.util;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
+import org.apache.camel.Message;
 import org.apache.camel.Predicate;
 import org.apache.camel.spi.Language;
-import org.apache.camel.spi.Registry;
-import org.apache.camel.util.ExchangeHelper;
 
 /**
  * Predicate which tries to convert a JSON message to a map first before
  * applying
+ *
+ * The simple predicates are compiled once, when the route is built.  The map
+ * parsed from a message is kept on the exchange so that the following predicates
+ * evaluated on the same message don't parse it again.
  */
 public class JsonSimplePredicate implements Predicate {
 
-    private final Language language;
-    private final String expression;
+    /**
+     * Exchange property holding the last JSON body parsed by a predicate.
+     */
+    public static final String PARSED_BODY_PROPERTY = "Syndesis.JsonSimplePredicate.ParsedBody";
+
+    private static final Pattern BODY_PATH = Pattern.compile("\\$\\{\\s*body\\.(.*?)\\s*}");
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    private static final Pattern DOT = Pattern.compile("\\.");
+
+    private final CamelContext context;
+    private final Predicate predicate;
+    private final Predicate mapPredicate;
+    private volatile ObjectMapper mapper;
 
     public JsonSimplePredicate(String expression, CamelContext context) {
-        this.language = context.resolveLanguage("simple");
-        this.expression = expression;
+        Language language = context.resolveLanguage("simple");
         Objects.requireNonNull(language, "The language 'simple' could not be resolved!");
+
+        this.context = context;
+        this.predicate = language.createPredicate(expression);
+        this.mapPredicate = language.createPredicate(convertSimpleToOGNLForMaps(expression));
     }
 
     @Override
     public boolean matches(Exchange exchange) {
-        Object msgBody = exchange.getIn().getBody();
+        Message in = exchange.getIn();
+        Object msgBody = in.getBody();
 
         // TODO: Maybe check for content-type, too ?
         // String contentType = exchange.getIn().getHeader(Exchange.CONTENT_TYPE, String.class);
         // if ("application/json".equals(contentType)) { ... }
         // ???
         if (!(msgBody instanceof String)) {
-            return language.createPredicate(expression).matches(exchange);
+            return predicate.matches(exchange);
         }
 
-        Exchange exchangeToCheck = exchange;
         // If it is a json document , suppose that this is a document which needs to be parsed as JSON
         // Therefor we set a map instead of the string
-        Map jsonDocument = jsonStringAsMap((String) msgBody, exchange);
-        if (jsonDocument != null) {
-            // Clone the exchange and set the JSON message converted to a Map / List as in message.
-            // The intention is that only this predicate acts on the converted value,
-            // but the original in-message still continues to carry the same format
-            // The predicated is supposed to be read only with respect to the incoming messaeg.
-            exchangeToCheck = ExchangeHelper.createCopy(exchange, true);
-            exchangeToCheck.getIn().setBody(jsonDocument);
+        Map<String, Object> jsonDocument = jsonStringAsMap((String) msgBody, exchange);
+        if (jsonDocument == null) {
+            return mapPredicate.matches(exchange);
+        }
+
+        // Set the JSON message converted to a Map as in message only while this predicate
+        // runs, the original in-message still continues to carry the same format.
+        // The predicated is supposed to be read only with respect to the incoming message.
+        in.setBody(jsonDocument);
+        try {
+            return mapPredicate.matches(exchange);
+        } finally {
+            in.setBody(msgBody);
         }
-        return language.createPredicate(convertSimpleToOGNLForMaps(expression)).matches(exchangeToCheck);
     }
 
-    private String convertSimpleToOGNLForMaps(String expression) {
-        String[] expressionParts = expression.split("\\s+",2);
-        Matcher matcher = Pattern.compile("\\$\\{\\s*body\\.(.*?)\\s*}").matcher(expressionParts[0]);
+    private static String convertSimpleToOGNLForMaps(String expression) {
+        String[] expressionParts = WHITESPACES.split(expression, 2);
+        Matcher matcher = BODY_PATH.matcher(expressionParts[0]);
         if (!matcher.matches()) {
             // Nothing we can convert;
             return expression;
         }
         String path = matcher.group(1);
         StringBuilder ognlExpr = new StringBuilder("${body");
-        for (String part : path.split("\\.")) {
+        for (String part : DOT.split(path)) {
             ognlExpr.append("[").append(part).append("]");
         }
         ognlExpr.append("}");
@@ -90,23 +108,12 @@ public class JsonSimplePredicate implements Predicate {
         return ognlExpr.toString();
     }
 
-    private Map jsonStringAsMap(String body, Exchange exchange) {
-        ObjectMapper mapper = resolveObjectMapper(exchange.getContext().getRegistry());
-
-        // convert JSON string to Map
-        try {
-            return mapper.readValue(body, new TypeReference<Map<String, Object>>(){});
-        } catch (IOException e) {
-            // ignore because we are attempting to convert, but its not a JSON document
-        }
-        return null;
-    }
-
-    private ObjectMapper resolveObjectMapper(Registry registry) {
-        Set<ObjectMapper> mappers = registry.findByType(ObjectMapper.class);
-        if (mappers.size() == 1) {
-            return mappers.iterator().next();
+    private Map<String, Object> jsonStringAsMap(String body, Exchange exchange) {
+        ObjectMapper answer = mapper;
+        if (answer == null) {
+            answer = ParsedJsonBody.resolveObjectMapper(context);
+            mapper = answer;
         }
-        return new ObjectMapper();
+        return ParsedJsonBody.parse(body, exchange, answer);
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.Registry;
+
+/**
+ * Parses JSON message bodies to maps and keeps the result on the exchange, so that
+ * the predicates evaluated one after the other on the same message parse it once.
+ */
+final class ParsedJsonBody {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() { };
+
+    private final String body;
+    private final Map<String, Object> document;
+
+    private ParsedJsonBody(String body, Map<String, Object> document) {
+        this.body = body;
+        this.document = document;
+    }
+
+    /**
+     * @return the body parsed as a map, null if the body isn't a JSON object.
+     */
+    static Map<String, Object> parse(String body, Exchange exchange, ObjectMapper mapper) {
+        // Parsed already by a previous predicate on the same body
+        ParsedJsonBody parsed = exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY, ParsedJsonBody.class);
+        if (parsed != null && body.equals(parsed.body)) {
+            return parsed.document;
+        }
+
+        Map<String, Object> document = null;
+        // convert JSON string to Map
+        try {
+            document = mapper.readValue(body, MAP_TYPE);
+        } catch (IOException e) {
+            // ignore because we are attempting to convert, but its not a JSON document
+        }
+        exchange.setProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY, new ParsedJsonBody(body, document));
+        return document;
+    }
+
+    /**
+     * @return the object mapper of the registry if there is exactly one, a new one otherwise.
+     */
+    static ObjectMapper resolveObjectMapper(CamelContext context) {
+        Registry registry = context.getRegistry();
+        Set<ObjectMapper> mappers = registry.findByType(ObjectMapper.class);
+        if (mappers.size() == 1) {
+            return mappers.iterator().next();
+        }
+        return new ObjectMapper();
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.syndesis.integration.model.steps.RuleFilter;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+
+/**
+ * Evaluates the rules of a {@link RuleFilter} directly on the JSON body of the
+ * messages, without going through the simple language.
+ *
+ * The rules are compiled once, when the route is built: the paths are split in
+ * segments, the regular expressions compiled and the values converted to the
+ * types they are compared with.  The map parsed from a message is shared with the
+ * other filters evaluated on the same message, see {@link JsonSimplePredicate}.
+ * Bodies which aren't JSON are evaluated by the equivalent simple expression.
+ *
+ * The values are compared the way the simple language does: numbers, and text
+ * holding numbers, are compared as numbers, a value equals the rule value if
+ * their text is the same or if the rule value converted to the type of the value
+ * is equal to it, and contains only looks into text and lists of text.  The
+ * values of the {@code in} operators are trimmed, in the simple expression used
+ * for the other bodies too.
+ */
+public class RuleFilterPredicate implements Predicate {
+
+    private static final Pattern DOT = Pattern.compile("\\.");
+    private static final Pattern COMMA = Pattern.compile(",");
+
+    private final CamelContext context;
+    private final Condition condition;
+    private final Predicate fallback;
+    private final String expression;
+    private volatile ObjectMapper mapper;
+
+    public RuleFilterPredicate(RuleFilter filter, CamelContext context) {
+        List<RuleFilter.Rule> rules = filter.getRules();
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalArgumentException("No rules specified for step " + filter);
+        }
+
+        Condition[] conditions = rules.stream().map(RuleFilterPredicate::compile).toArray(Condition[]::new);
+        String delimiter;
+        if (isAnd(filter.getPredicate())) {
+            this.condition = conditions.length == 1 ? conditions[0] : new AllOf(conditions);
+            delimiter = " && ";
+        } else {
+            this.condition = conditions.length == 1 ? conditions[0] : new AnyOf(conditions);
+            delimiter = " || ";
+        }
+
+        this.context = context;
+        this.expression = rules.stream()
+            .map(r -> "${body." + r.getPath() + "} " + r.getOp() + " '" + value(r) + "'")
+            .collect(Collectors.joining(delimiter));
+        this.fallback = new JsonSimplePredicate(expression, context);
+    }
+
+    @Override
+    public boolean matches(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof Map) {
+            return condition.matches(body);
+        }
+        if (body instanceof String) {
+            Map<String, Object> document = ParsedJsonBody.parse((String) body, exchange, objectMapper());
+            if (document != null) {
+                return condition.matches(document);
+            }
+        }
+        return fallback.matches(exchange);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleFilterPredicate[" + expression + "]";
+    }
+
+    private ObjectMapper objectMapper() {
+        ObjectMapper answer = mapper;
+        if (answer == null) {
+            answer = ParsedJsonBody.resolveObjectMapper(context);
+            mapper = answer;
+        }
+        return answer;
+    }
+
+    private static boolean isAnd(String predicate) {
+        if (predicate == null || RuleFilter.OR.equalsIgnoreCase(predicate)) {
+            return false;
+        }
+        if (RuleFilter.AND.equalsIgnoreCase(predicate)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unsupported rule filter predicate: " + predicate);
+    }
+
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private static Condition compile(RuleFilter.Rule rule) {
+        Path path = new Path(rule.getPath());
+        Operand value = new Operand(rule.getValue());
+        String op = rule.getOp() == null ? "" : rule.getOp().trim();
+
+        switch (op) {
+            case "==":
+                return body -> isEqual(path.get(body), value, false);
+            case "!=":
+                return body -> isNotEqual(path.get(body), value);
+            case "=~":
+                return body -> isEqual(path.get(body), value, true);
+            case "<":
+                return body -> compare(path.get(body), value, c -> c < 0);
+            case "<=":
+                return body -> compare(path.get(body), value, c -> c <= 0);
+            case ">":
+                return body -> compare(path.get(body), value, c -> c > 0);
+            case ">=":
+                return body -> compare(path.get(body), value, c -> c >= 0);
+            case "contains":
+                return body -> contains(path.get(body), value);
+            case "not contains":
+                return body -> !contains(path.get(body), value);
+            case "~~":
+                return body -> containsIgnoreCase(path.get(body), value);
+            case "regex":
+                return matches(path, Pattern.compile(value.text));
+            case "not regex":
+                Condition regex = matches(path, Pattern.compile(value.text));
+                return body -> !regex.matches(body);
+            case "in":
+                return new In(path, value(rule));
+            case "not in":
+                Condition in = new In(path, value(rule));
+                return body -> !in.matches(body);
+            default:
+                throw new IllegalArgumentException("Unsupported rule filter operator: " + rule.getOp());
+        }
+    }
+
+    /**
+     * @return the value of the rule, with each of the values of the {@code in} operators trimmed
+     */
+    private static String value(RuleFilter.Rule rule) {
+        String op = rule.getOp() == null ? "" : rule.getOp().trim();
+        if (rule.getValue() != null && ("in".equals(op) || "not in".equals(op))) {
+            return COMMA.splitAsStream(rule.getValue()).map(String::trim).collect(Collectors.joining(","));
+        }
+        return rule.getValue();
+    }
+
+    private static Condition matches(Path path, Pattern pattern) {
+        return body -> {
+            Object left = path.get(body);
+            return left != null && pattern.matcher(left.toString()).matches();
+        };
+    }
+
+    private static boolean isEqual(Object left, Operand right, boolean ignoreCase) {
+        if (left == null) {
+            return false;
+        }
+        if (left instanceof String) {
+            return ignoreCase ? right.text.equalsIgnoreCase((String) left) : right.text.equals(left);
+        }
+        String leftText = left.toString();
+        if (ignoreCase ? right.text.equalsIgnoreCase(leftText) : right.text.equals(leftText)) {
+            return true;
+        }
+        // Then, as simple does, the rule value converted to the type of the value
+        Object converted = right.as(left.getClass());
+        return converted != null && converted.equals(left);
+    }
+
+    /**
+     * Like simple, values which can be ordered are not equal when they don't compare as equal.
+     */
+    private static boolean isNotEqual(Object left, Operand right) {
+        if (left instanceof Comparable) {
+            return compare(left, right, c -> c != 0);
+        }
+        return !isEqual(left, right, false);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean compare(Object left, Operand right, IntPredicate test) {
+        if (left == null) {
+            return false;
+        }
+        Number leftNumber = toNumber(left);
+        if (leftNumber != null && right.number != null) {
+            return test.test(compareNumbers(leftNumber, right.number));
+        }
+        if (!(left instanceof String) && left instanceof Comparable) {
+            Object converted = right.as(left.getClass());
+            if (converted != null) {
+                return test.test(((Comparable) left).compareTo(converted));
+            }
+        }
+        return test.test(left.toString().compareTo(right.text));
+    }
+
+    private static boolean contains(Object left, Operand right) {
+        if (left instanceof Collection) {
+            return ((Collection<?>) left).contains(right.text);
+        }
+        return left instanceof String && ((String) left).contains(right.text);
+    }
+
+    private static boolean containsIgnoreCase(Object left, Operand right) {
+        if (left instanceof Collection) {
+            for (Object item : (Collection<?>) left) {
+                if (item instanceof String && right.text.equalsIgnoreCase((String) item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return left instanceof String && ((String) left).toLowerCase(Locale.ROOT).contains(right.lowerCaseText);
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * @return the value as a number, text converted to a long or else a double like
+     * simple does, null if it isn't a number.
+     */
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof String) {
+            Long longValue = parseLong((String) value);
+            return longValue != null ? longValue : parseDouble((String) value);
+        }
+        return null;
+    }
+
+    private static Integer parseInteger(String text) {
+        try {
+            return Integer.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long parseLong(String text) {
+        try {
+            return Long.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Double parseDouble(String text) {
+        try {
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Boolean parseBoolean(String text) {
+        if ("true".equalsIgnoreCase(text)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(text)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * A compiled rule, or combination of rules, evaluated on the parsed body.
+     */
+    @FunctionalInterface
+    private interface Condition {
+        boolean matches(Object body);
+    }
+
+    private static final class AllOf implements Condition {
+        private final Condition[] conditions;
+
+        AllOf(Condition... conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        public boolean matches(Object body) {
+            for (Condition condition : conditions) {
+                if (!condition.matches(body)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class AnyOf implements Condition {
+        private final Condition[] conditions;
+
+        AnyOf(Condition... conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        public boolean matches(Object body) {
+            for (Condition condition : conditions) {
+                if (condition.matches(body)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Value of a rule with its forms as the types of the JSON values, so that it
+     * isn't converted again for every message.
+     */
+    private static final class Operand {
+        private final String text;
+        private final String lowerCaseText;
+        private final Number number;
+        private final Integer integerValue;
+        private final Long longValue;
+        private final Double doubleValue;
+        private final Boolean booleanValue;
+
+        Operand(String text) {
+            this.text = text == null ? "" : text;
+            this.lowerCaseText = this.text.toLowerCase(Locale.ROOT);
+            this.number = toNumber(this.text);
+            this.integerValue = parseInteger(this.text);
+            this.longValue = parseLong(this.text);
+            this.doubleValue = parseDouble(this.text);
+            this.booleanValue = parseBoolean(this.text);
+        }
+
+        /**
+         * @return the value converted to the given type, null if it can't be
+         */
+        Object as(Class<?> type) {
+            if (type == Integer.class) {
+                return integerValue;
+            }
+            if (type == Long.class) {
+                return longValue;
+            }
+            if (type == Double.class) {
+                return doubleValue;
+            }
+            if (type == Boolean.class) {
+                return booleanValue;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Dot separated path to a value of the body, the segments which are numbers
+     * also index lists.
+     */
+    private static final class Path {
+        private final String[] segments;
+        private final int[] indexes;
+
+        Path(String path) {
+            this.segments = path == null || path.isEmpty() ? new String[0] : DOT.split(path);
+            this.indexes = new int[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = segments[i].trim();
+                indexes[i] = segments[i].chars().allMatch(Character::isDigit) && !segments[i].isEmpty()
+                    ? Integer.parseInt(segments[i]) : -1;
+            }
+        }
+
+        Object get(Object body) {
+            Object current = body;
+            for (int i = 0; i < segments.length && current != null; i++) {
+                if (current instanceof Map) {
+                    current = ((Map<?, ?>) current).get(segments[i]);
+                } else if (current instanceof List && indexes[i] >= 0) {
+                    List<?> list = (List<?>) current;
+                    current = indexes[i] < list.size() ? list.get(indexes[i]) : null;
+                } else {
+                    return null;
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Matches when the value equals one of the comma separated values of the rule.
+     */
+    private static final class In implements Condition {
+        private final Path path;
+        private final Operand[] values;
+
+        In(Path path, String values) {
+            this.path = path;
+            this.values = COMMA.splitAsStream(values).map(Operand::new).toArray(Operand[]::new);
+        }
+
+        @Override
+        public boolean matches(Object body) {
+            Object left = path.get(body);
+            for (Operand value : values) {
+                if (isEqual(left, value, false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime;
+
+import io.syndesis.integration.model.steps.Filter;
+import io.syndesis.integration.model.steps.RuleFilter;
+import io.syndesis.integration.model.steps.Step;
+import io.syndesis.integration.runtime.stephandlers.FilterHandler;
+import io.syndesis.integration.runtime.stephandlers.RuleFilterHandler;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StepHandlerRegistryTest {
+
+    private final StepHandlerRegistry registry = new StepHandlerRegistry(getClass().getClassLoader());
+
+    @Test
+    public void shouldResolveHandlersByStepClass() {
+        StepHandler handler = registry.get(new Filter("${body} == 'James'"));
+
+        assertThat(handler).isInstanceOf(FilterHandler.class);
+        assertThat(registry.get(new Filter("${body} == 'Jimmi'"))).isSameAs(handler);
+        assertThat(registry.get(new RuleFilter())).isInstanceOf(RuleFilterHandler.class);
+    }
+
+    @Test
+    public void shouldRejectUnknownSteps() {
+        assertThatThrownBy(() -> registry.get(new Step("unknown") { }))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("Unknown step kind");
+    }
+}
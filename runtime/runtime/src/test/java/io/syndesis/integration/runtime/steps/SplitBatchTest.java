@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.steps;
+
+import io.syndesis.integration.model.Flow;
+import io.syndesis.integration.model.SyndesisModel;
+import io.syndesis.integration.model.steps.Split;
+
+import java.util.Arrays;
+
+/**
+ * Groups the elements of the split in JSON arrays
+ */
+public class SplitBatchTest extends SplitTest {
+
+    public SplitBatchTest() {
+        messages = Arrays.asList(
+                "{ \"lineItems\": [{\"id\":123,\"name\":\"beer\"},{\"id\":456,\"name\":\"wine\"},{\"id\":789,\"name\":\"gin\"}] }"
+        );
+        expectedMessages = Arrays.asList(
+                "[{\"id\":123,\"name\":\"beer\"},{\"id\":456,\"name\":\"wine\"}]",
+                "[{\"id\":789,\"name\":\"gin\"}]",
+                "[{\"id\":123,\"name\":\"beer\"},{\"id\":456,\"name\":\"wine\"}]",
+                "[{\"id\":789,\"name\":\"gin\"}]"
+        );
+    }
+
+    @Override
+    protected void addSyndesisFlows(SyndesisModel syndesis) {
+        // Once with the streaming parser, then once with JsonPath
+        Flow flow = syndesis.createFlow().endpoint(START_URI);
+        Split streaming = flow.split("$.lineItems[*]");
+        streaming.setBatchSize(2);
+        streaming.endpoint(RESULTS_URI);
+        flow.endpoint("direct:jsonpath");
+
+        Split jsonPath = syndesis.createFlow().endpoint("direct:jsonpath").split("$.lineItems");
+        jsonPath.setBatchSize(2);
+        jsonPath.endpoint(RESULTS_URI);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.steps;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.syndesis.integration.model.SyndesisModel;
+import io.syndesis.integration.model.steps.Split;
+import io.syndesis.integration.runtime.SyndesisTestSupport;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Processes the elements of a parallel split concurrently, but never more of them
+ * at the same time than the maximum concurrency
+ */
+public class SplitConcurrencyTest extends SyndesisTestSupport {
+    private static final String START_URI = "direct:start";
+    private static final String WORK_URI = "direct:work";
+    private static final String RESULTS_URI = "mock:results";
+    private static final int MAX_CONCURRENCY = 3;
+    private static final int ELEMENTS = 12;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final CountDownLatch overlapping = new CountDownLatch(MAX_CONCURRENCY);
+
+    @EndpointInject(uri = RESULTS_URI)
+    protected MockEndpoint resultsEndpoint;
+
+    @Test
+    public void testElementsRunConcurrentlyUpToMaxConcurrency() throws Exception {
+        resultsEndpoint.expectedMessageCount(ELEMENTS);
+
+        StringBuilder body = new StringBuilder("{ \"lineItems\": [ ");
+        for (int i = 0; i < ELEMENTS; i++) {
+            body.append(i == 0 ? "" : ", ").append("{ \"id\": ").append(i).append(" }");
+        }
+        template.sendBody(START_URI, body.append(" ] }").toString());
+
+        MockEndpoint.assertIsSatisfied(resultsEndpoint);
+        assertThat(overlapping.getCount()).describedAs("elements waiting for each other").isZero();
+        assertThat(maxActive.get()).isEqualTo(MAX_CONCURRENCY);
+    }
+
+    @Override
+    protected RoutesBuilder[] createRouteBuilders() throws Exception {
+        return new RoutesBuilder[] {
+            createRouteBuilder(),
+            new RouteBuilder() {
+                @Override
+                public void configure() {
+                    // The first elements wait until as many are processed at the same
+                    // time as allowed, the later ones linger so that they overlap too
+                    from(WORK_URI).process(exchange -> {
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        try {
+                            overlapping.countDown();
+                            overlapping.await(5, TimeUnit.SECONDS);
+                            Thread.sleep(20);
+                        } finally {
+                            active.decrementAndGet();
+                        }
+                    });
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void addSyndesisFlows(SyndesisModel syndesis) {
+        Split split = syndesis.createFlow().endpoint(START_URI).split("$.lineItems");
+        split.setParallel(true);
+        split.setMaxConcurrency(MAX_CONCURRENCY);
+        split.endpoint(WORK_URI).endpoint(RESULTS_URI);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.steps;
+
+import io.syndesis.integration.model.SyndesisModel;
+import io.syndesis.integration.model.steps.Split;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Processes the elements of the split in parallel on a bounded thread pool
+ */
+public class SplitParallelTest extends SplitTest {
+
+    @Test
+    @Override
+    public void testStep() throws Exception {
+        resultsEndpoint.expectedBodiesReceivedInAnyOrder(expectedMessages);
+
+        for (Object body : messages) {
+            template.sendBody(START_URI, body);
+        }
+
+        MockEndpoint.assertIsSatisfied(resultsEndpoint);
+        assertThat(context.getExecutorServiceManager().getThreadPoolProfile("syndesis-split-2").getMaxPoolSize()).isEqualTo(1);
+    }
+
+    @Override
+    protected void addSyndesisFlows(SyndesisModel syndesis) {
+        Split split = syndesis.createFlow().endpoint(START_URI).split("$.lineItems");
+        split.setParallel(true);
+        split.setMaxConcurrency(2);
+        split.endpoint(RESULTS_URI);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package io.syndesis.integration.runtime.steps;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.syndesis.integration.model.SyndesisModel;
+import io.syndesis.integration.runtime.SyndesisTestSupport;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+/**
+ * Splits a body that can't be streamed, like a map, with the JsonPath expression
+ */
+public class SplitStreamingMapBodyTest extends SyndesisTestSupport {
+    public static final String START_URI = "direct:start";
+    public static final String RESULTS_URI = "mock:results";
+
+    @EndpointInject(uri = RESULTS_URI)
+    protected MockEndpoint resultsEndpoint;
+
+    @Test
+    public void testStep() throws Exception {
+        resultsEndpoint.expectedBodiesReceived(
+            "{\"id\":123,\"name\":\"beer\"}",
+            "{\"id\":456,\"name\":\"wine\"}"
+        );
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("orderId", "ABC");
+        body.put("lineItems", Arrays.asList(lineItem(123, "beer"), lineItem(456, "wine")));
+        template.sendBody(START_URI, body);
+
+        MockEndpoint.assertIsSatisfied(resultsEndpoint);
+        logMessagesReceived(resultsEndpoint);
+    }
+
+    @Override
+    protected void addSyndesisFlows(SyndesisModel syndesis) {
+        syndesis.createFlow().endpoint(START_URI).split("$.lineItems[*]").endpoint(RESULTS_URI);
+    }
+
+    private static Map<String, Object> lineItem(int id, String name) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", id);
+        item.put("name", name);
+        return item;
+    }
+}
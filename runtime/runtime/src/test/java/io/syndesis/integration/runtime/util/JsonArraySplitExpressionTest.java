@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonArraySplitExpressionTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonArraySplitExpressionTest.class);
+
+    private static final String BODY = "{ \"orderId\": \"ABC\", \"customer\": { \"name\": \"James\", \"tags\": [1, 2] }, "
+        + "\"lineItems\": [ { \"id\": 123, \"price\": 1.10, \"name\": \"beer\" }, \"wine\", null, [ true, false ] ] }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CamelContext context = new DefaultCamelContext();
+
+    @Test
+    public void shouldOnlyStreamSimpleArrayPaths() {
+        assertThat(JsonArraySplitExpression.forPath("$[*]")).isNotNull();
+        assertThat(JsonArraySplitExpression.forPath("$.lineItems[*]")).isNotNull();
+        assertThat(JsonArraySplitExpression.forPath(" $.order['line items'][*] ")).isNotNull();
+
+        assertThat(JsonArraySplitExpression.forPath("$.lineItems")).isNull();
+        assertThat(JsonArraySplitExpression.forPath("$.lineItems[0]")).isNull();
+        assertThat(JsonArraySplitExpression.forPath("$..lineItems[*]")).isNull();
+        assertThat(JsonArraySplitExpression.forPath("$.lineItems[?(@.id > 1)]")).isNull();
+        assertThat(JsonArraySplitExpression.forPath(null)).isNull();
+    }
+
+    @Test
+    public void shouldSplitElementsAsWritten() {
+        assertThat(split("$.lineItems[*]", BODY)).containsExactly(
+            "{\"id\":123,\"price\":1.10,\"name\":\"beer\"}", "\"wine\"", "null", "[true,false]");
+        assertThat(split("$.customer.tags[*]", BODY.getBytes(StandardCharsets.UTF_8))).containsExactly("1", "2");
+        assertThat(split("$.customer[*]", BODY)).containsExactly("\"James\"", "[1,2]");
+        assertThat(split("$[*]", "[ 1, { \"a\": \"b\" } ]")).containsExactly("1", "{\"a\":\"b\"}");
+    }
+
+    @Test
+    public void shouldHaveNoElementsForMissingPaths() {
+        assertThat(split("$.missing[*]", BODY)).isEmpty();
+        assertThat(split("$.orderId[*]", BODY)).isEmpty();
+        assertThat(split("$.customer.name.first[*]", BODY)).isEmpty();
+    }
+
+    /**
+     * Compares the peak heap and the throughput of the streaming split with the
+     * JsonPath evaluation followed by marshalling of every element.  Only runs
+     * with {@code -Dsyndesis.benchmarks=true}.
+     */
+    @Test
+    public void benchmarkSplit() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("syndesis.benchmarks"));
+
+        final int items = 200_000;
+        File file = folder.newFile("items.json");
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{ \"items\": [");
+            for (int i = 0; i < items; i++) {
+                writer.write(i == 0 ? "" : ",");
+                writer.write("{\"id\":" + i + ",\"name\":\"item " + i + "\",\"price\":1.10,\"tags\":[\"a\",\"b\"]}");
+            }
+            writer.write("] }");
+        }
+
+        final ObjectMapper mapper = new ObjectMapper();
+        final Expression jsonPath = context.resolveLanguage("jsonpath").createExpression("$.items[*]");
+        final Expression streaming = JsonArraySplitExpression.forPath("$.items[*]");
+
+        measure("JsonPath and marshal", file, items, exchange -> {
+            int count = 0;
+            for (Object item : jsonPath.evaluate(exchange, List.class)) {
+                mapper.writeValueAsBytes(item);
+                count++;
+            }
+            return count;
+        });
+        measure("Streaming", file, items, exchange -> {
+            int count = 0;
+            for (Iterator<?> it = streaming.evaluate(exchange, Iterator.class); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        });
+    }
+
+    @FunctionalInterface
+    private interface Splitter {
+        int split(Exchange exchange) throws IOException;
+    }
+
+    private void measure(String name, File file, int items, Splitter splitter) throws IOException {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+        try (InputStream stream = new FileInputStream(file)) {
+            assertThat(splitter.split(exchange(stream))).isEqualTo(items);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        LOG.info("{}: {} KB of JSON, {} elements/s, peak heap {} KB",
+            name, file.length() / 1024, (long) (items / (double) elapsed * TimeUnit.SECONDS.toNanos(1)), peak / 1024);
+    }
+
+    private List<String> split(String path, Object body) {
+        List<String> answer = new ArrayList<>();
+        Iterator<?> elements = JsonArraySplitExpression.forPath(path).evaluate(exchange(body), Iterator.class);
+        while (elements.hasNext()) {
+            answer.add(new String((byte[]) elements.next(), StandardCharsets.UTF_8));
+        }
+        return answer;
+    }
+
+    private Exchange exchange(Object body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.ExchangeHelper;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonSimplePredicateTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonSimplePredicateTest.class);
+
+    private static final String BODY = "{ \"name\": \"James\", \"address\": { \"city\": \"London\" } }";
+
+    private final CamelContext context = new DefaultCamelContext();
+
+    @Test
+    public void shouldMatchJsonBodyWithoutChangingIt() {
+        Exchange exchange = exchange(BODY);
+
+        assertThat(new JsonSimplePredicate("${body.name} == 'James'", context).matches(exchange)).isTrue();
+        assertThat(new JsonSimplePredicate("${body.address.city} == 'Paris'", context).matches(exchange)).isFalse();
+        assertThat(exchange.getIn().getBody()).isSameAs(BODY);
+    }
+
+    @Test
+    public void shouldShareParsedBodyBetweenPredicates() {
+        Exchange exchange = exchange(BODY);
+
+        new JsonSimplePredicate("${body.name} == 'James'", context).matches(exchange);
+        Object parsed = exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY);
+        new JsonSimplePredicate("${body.address.city} == 'London'", context).matches(exchange);
+        assertThat(exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY)).isSameAs(parsed);
+
+        // A new body is parsed again
+        exchange.getIn().setBody("{ \"name\": \"Jimmi\" }");
+        assertThat(new JsonSimplePredicate("${body.name} == 'James'", context).matches(exchange)).isFalse();
+        assertThat(exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY)).isNotSameAs(parsed);
+    }
+
+    @Test
+    public void shouldMatchNonJsonBody() {
+        assertThat(new JsonSimplePredicate("${body} == 'James'", context).matches(exchange("James"))).isTrue();
+        assertThat(new JsonSimplePredicate("${body} > 5", context).matches(exchange(10))).isTrue();
+    }
+
+    /**
+     * Compares the messages per second of the predicate with an evaluation that
+     * parses the body, copies the exchange and compiles the expression per message.
+     * Only runs with {@code -Dsyndesis.benchmarks=true}.
+     */
+    @Test
+    public void benchmarkMatches() {
+        Assume.assumeTrue(Boolean.getBoolean("syndesis.benchmarks"));
+
+        final String expression = "${body.address.city} == 'London'";
+        final Predicate compiled = new JsonSimplePredicate(expression, context);
+        final Predicate perMessage = exchange -> {
+            Exchange copy = ExchangeHelper.createCopy(exchange, true);
+            copy.getIn().setBody(exchange.getIn().getBody(String.class));
+            return new JsonSimplePredicate(expression, context).matches(copy);
+        };
+
+        LOG.info("JsonSimplePredicate: {} msg/s compiled once, {} msg/s compiled per message",
+            (long) throughput(compiled), (long) throughput(perMessage));
+    }
+
+    private double throughput(Predicate predicate) {
+        final int warmup = 10_000;
+        final int messages = 50_000;
+        for (int i = 0; i < warmup; i++) {
+            assertThat(predicate.matches(exchange(BODY))).isTrue();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            predicate.matches(exchange(BODY));
+        }
+        return messages / (double) (System.nanoTime() - start) * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private Exchange exchange(Object body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+}
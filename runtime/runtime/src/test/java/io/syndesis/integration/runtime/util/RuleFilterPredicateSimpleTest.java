@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.syndesis.integration.model.steps.RuleFilter;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the rules evaluated natively match the same bodies as the
+ * equivalent simple expressions.
+ */
+@RunWith(Parameterized.class)
+public class RuleFilterPredicateSimpleTest {
+
+    private static final String BODY = "{ \"n9\": 9, \"n10\": 10, \"s9\": \"9\", \"s10\": \"10\", "
+        + "\"lower\": \"abc\", \"upper\": \"ABC\", \"text\": \"10abc\" }";
+
+    private static final List<String> PATHS = Arrays.asList("n9", "n10", "s9", "s10", "lower", "upper", "text", "missing");
+
+    private final CamelContext context = new DefaultCamelContext();
+    private final String op;
+    private final List<String> values;
+
+    public RuleFilterPredicateSimpleTest(String op, List<String> values) {
+        this.op = op;
+        this.values = values;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Iterable<Object[]> operators() {
+        List<String> values = Arrays.asList("9", "10", "abc", "ABC");
+        List<String> patterns = Arrays.asList("1.*", "a.*", "10");
+        List<String> lists = Arrays.asList("9,10", "abc,10", "ABC");
+        return Arrays.asList(new Object[][] {
+            {"==", values},
+            {"!=", values},
+            {"=~", values},
+            {"<", values},
+            {"<=", values},
+            {">", values},
+            {">=", values},
+            {"contains", values},
+            {"not contains", values},
+            {"~~", values},
+            {"regex", patterns},
+            {"not regex", patterns},
+            {"in", lists},
+            {"not in", lists}
+        });
+    }
+
+    @Test
+    public void shouldMatchLikeSimple() {
+        for (String path : PATHS) {
+            for (String value : values) {
+                String expression = "${body." + path + "} " + op + " '" + value + "'";
+                Predicate simple = new JsonSimplePredicate(expression, context);
+
+                RuleFilter filter = new RuleFilter(RuleFilter.OR);
+                filter.setRules(Collections.singletonList(new RuleFilter.Rule(path, op, value)));
+                Predicate rule = new RuleFilterPredicate(filter, context);
+
+                assertThat(rule.matches(exchange())).as(expression).isEqualTo(simple.matches(exchange()));
+            }
+        }
+    }
+
+    private Exchange exchange() {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(BODY);
+        return exchange;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.integration.runtime.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.syndesis.integration.model.steps.RuleFilter;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RuleFilterPredicateTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RuleFilterPredicateTest.class);
+
+    private static final String BODY = "{ \"name\": \"James\", \"age\": 42, \"score\": 7.5, "
+        + "\"address\": { \"city\": \"London\" }, \"drinks\": [ \"Gin\", \"Tonic\" ], "
+        + "\"orders\": [ { \"id\": 10 }, { \"id\": 11 } ] }";
+
+    private final CamelContext context = new DefaultCamelContext();
+
+    @Test
+    public void shouldEvaluateEachOperator() {
+        assertMatches("name", "==", "James", "Jimmi");
+        assertMatches("age", "==", "42", "43");
+        assertMatches("name", "!=", "Jimmi", "James");
+        assertMatches("name", "=~", "JAMES", "JIMMI");
+        assertMatches("age", "<", "43", "42");
+        assertMatches("age", "<=", "42", "41");
+        assertMatches("age", ">", "9", "42");
+        assertMatches("age", ">=", "42", "43");
+        assertMatches("score", ">", "7.25", "7.5");
+        assertMatches("address.city", "contains", "ond", "Par");
+        assertMatches("drinks", "contains", "Gin", "Rum");
+        assertMatches("address.city", "~~", "LON", "PAR");
+        assertMatches("address.city", "not contains", "Par", "ond");
+        assertMatches("name", "regex", "J.*s", "J.*i");
+        assertMatches("name", "not regex", "J.*i", "J.*s");
+        assertMatches("age", "in", "41, 42", "41, 43");
+        assertMatches("address.city", "in", "Paris,London", "Paris,Rome");
+        assertMatches("address.city", "not in", "Paris,Rome", "Paris,London");
+        assertMatches("orders.1.id", "==", "11", "10");
+    }
+
+    @Test
+    public void shouldNotMatchMissingValues() {
+        assertThat(predicate(RuleFilter.OR, rule("address.street", "==", "Baker Street")).matches(exchange(BODY))).isFalse();
+        assertThat(predicate(RuleFilter.OR, rule("address.street", "!=", "Baker Street")).matches(exchange(BODY))).isTrue();
+        assertThat(predicate(RuleFilter.OR, rule("orders.5.id", ">", "1")).matches(exchange(BODY))).isFalse();
+    }
+
+    @Test
+    public void shouldCombineRules() {
+        RuleFilter.Rule matching = rule("name", "==", "James");
+        RuleFilter.Rule notMatching = rule("age", ">", "50");
+
+        assertThat(predicate(RuleFilter.AND, matching, notMatching).matches(exchange(BODY))).isFalse();
+        assertThat(predicate(RuleFilter.OR, matching, notMatching).matches(exchange(BODY))).isTrue();
+        assertThat(predicate(null, notMatching, matching).matches(exchange(BODY))).isTrue();
+    }
+
+    @Test
+    public void shouldShareParsedBodyWithSimplePredicates() {
+        Exchange exchange = exchange(BODY);
+
+        assertThat(new JsonSimplePredicate("${body.name} == 'James'", context).matches(exchange)).isTrue();
+        Object parsed = exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY);
+        assertThat(predicate(RuleFilter.OR, rule("name", "==", "James")).matches(exchange)).isTrue();
+        assertThat(exchange.getProperty(JsonSimplePredicate.PARSED_BODY_PROPERTY)).isSameAs(parsed);
+        assertThat(exchange.getIn().getBody()).isSameAs(BODY);
+    }
+
+    @Test
+    public void shouldMatchMapBody() {
+        Exchange exchange = exchange(Collections.singletonMap("name", "James"));
+
+        assertThat(predicate(RuleFilter.OR, rule("name", "==", "James")).matches(exchange)).isTrue();
+    }
+
+    @Test
+    public void shouldTrimInValuesOfOtherBodies() {
+        Exchange exchange = exchange(new Person());
+
+        assertThat(predicate(RuleFilter.OR, rule("age", "in", "41, 42")).matches(exchange)).isTrue();
+        assertThat(predicate(RuleFilter.OR, rule("age", "not in", "41, 42")).matches(exchange)).isFalse();
+    }
+
+    @Test
+    public void shouldRejectUnknownOperator() {
+        assertThatThrownBy(() -> predicate(RuleFilter.OR, rule("name", "equals", "James")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("equals");
+    }
+
+    /**
+     * Compares, for each operator, the messages per second of the rules evaluated
+     * natively with the same rules evaluated as a simple expression.  Only runs
+     * with {@code -Dsyndesis.benchmarks=true}.
+     */
+    @Test
+    public void benchmarkOperators() {
+        Assume.assumeTrue(Boolean.getBoolean("syndesis.benchmarks"));
+
+        List<RuleFilter.Rule> rules = Arrays.asList(
+            rule("name", "==", "James"),
+            rule("name", "!=", "Jimmi"),
+            rule("name", "=~", "JAMES"),
+            rule("age", "<", "43"),
+            rule("age", "<=", "42"),
+            rule("age", ">", "9"),
+            rule("age", ">=", "42"),
+            rule("address.city", "contains", "ond"),
+            rule("address.city", "~~", "LON"),
+            rule("address.city", "not contains", "Par"),
+            rule("name", "regex", "J.*s"),
+            rule("name", "not regex", "J.*i"),
+            rule("address.city", "in", "Paris,London,Rome"),
+            rule("address.city", "not in", "Paris,Rome"));
+
+        for (RuleFilter.Rule rule : rules) {
+            Predicate rulePredicate = predicate(RuleFilter.OR, rule);
+            Predicate simplePredicate = new JsonSimplePredicate(
+                "${body." + rule.getPath() + "} " + rule.getOp() + " '" + rule.getValue() + "'", context);
+
+            LOG.info("{}: {} msg/s rule predicate, {} msg/s simple predicate",
+                rule.getOp(), (long) throughput(rulePredicate), (long) throughput(simplePredicate));
+        }
+    }
+
+    private double throughput(Predicate predicate) {
+        final int warmup = 5_000;
+        final int messages = 20_000;
+        for (int i = 0; i < warmup; i++) {
+            assertThat(predicate.matches(exchange(BODY))).isTrue();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            predicate.matches(exchange(BODY));
+        }
+        return messages / (double) (System.nanoTime() - start) * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void assertMatches(String path, String op, String matching, String notMatching) {
+        assertThat(predicate(RuleFilter.OR, rule(path, op, matching)).matches(exchange(BODY)))
+            .as("%s %s '%s'", path, op, matching).isTrue();
+        assertThat(predicate(RuleFilter.OR, rule(path, op, notMatching)).matches(exchange(BODY)))
+            .as("%s %s '%s'", path, op, notMatching).isFalse();
+    }
+
+    private Predicate predicate(String predicate, RuleFilter.Rule... rules) {
+        RuleFilter filter = new RuleFilter(predicate);
+        filter.setRules(Arrays.asList(rules));
+        return new RuleFilterPredicate(filter, context);
+    }
+
+    private static RuleFilter.Rule rule(String path, String op, String value) {
+        return new RuleFilter.Rule(path, op, value);
+    }
+
+    private Exchange exchange(Object body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+
+    public static class Person {
+        public int getAge() {
+            return 42;
+        }
+    }
+}